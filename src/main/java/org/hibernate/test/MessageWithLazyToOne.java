@@ -1,5 +1,7 @@
 package org.hibernate.test;
 
+import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.FetchProfile;
 import org.hibernate.annotations.LazyToOne;
 import org.hibernate.annotations.LazyToOneOption;
 
@@ -10,6 +12,11 @@ import javax.persistence.ManyToOne;
 import java.util.Objects;
 
 @Entity
+@FetchProfile(name = "inbox", fetchOverrides = {
+        @FetchProfile.FetchOverride(entity = MessageWithLazyToOne.class, association = "patient", mode = FetchMode.JOIN),
+        @FetchProfile.FetchOverride(entity = MessageWithLazyToOne.class, association = "practitioner", mode = FetchMode.JOIN),
+        @FetchProfile.FetchOverride(entity = Practitioner.class, association = "user", mode = FetchMode.JOIN)
+})
 public class MessageWithLazyToOne {
 
     @Id
@@ -1,11 +1,19 @@
 package org.hibernate.test;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.FetchProfile;
+import org.hibernate.proxy.HibernateProxy;
+
 import javax.persistence.*;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
 @Entity
+@FetchProfile(name = "patientChart", fetchOverrides = {
+        @FetchProfile.FetchOverride(entity = Patient.class, association = "practitioners", mode = FetchMode.JOIN)
+})
 public class Patient {
 
     @Id
@@ -45,10 +53,26 @@ public class Patient {
 
     public Patient addPractitioner(Practitioner practitioner) {
         this.practitioners.add(practitioner);
-        practitioner.getPatients().add(this);
+        if (isLoaded(practitioner)) {
+            practitioner.addPatient(this);
+        }
+        return this;
+    }
+
+    public Patient removePractitioner(Practitioner practitioner) {
+        this.practitioners.remove(practitioner);
+        if (isLoaded(practitioner)) {
+            practitioner.removePatient(this);
+        }
         return this;
     }
 
+    // an uninitialized proxy cannot record the change without being initialized: it will read the join table,
+    // up to date once flushed, so the change is missed if its patients are read before the flush
+    private static boolean isLoaded(Practitioner practitioner) {
+        return !(practitioner instanceof HibernateProxy) || Hibernate.isInitialized(practitioner);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -1,10 +1,15 @@
 package org.hibernate.test;
 
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.LazyToOne;
 import org.hibernate.annotations.LazyToOneOption;
 
 import javax.persistence.*;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -18,12 +23,17 @@ public class Practitioner {
     @OneToOne(fetch = FetchType.LAZY)
     private User user;
 
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
     @OneToMany(mappedBy = "practitioner")
     private Set<MessageWithoutLazyToOne> messages = new HashSet<>();
 
     @ManyToMany(mappedBy = "practitioners")
     private Set<Patient> patients = new HashSet<>();
 
+    // changes to the inverse side made while it was not loaded, applied when it is read: true for added
+    @Transient
+    private Map<Patient, Boolean> pendingPatients;
+
     public Long getId() {
         return id;
     }
@@ -39,6 +49,9 @@ public class Practitioner {
 
     public Practitioner setUser(User user) {
         this.user = user;
+        if (user != null && Hibernate.isInitialized(user)) {
+            user.assignPractitioner(this);
+        }
         return this;
     }
 
@@ -52,14 +65,61 @@ public class Practitioner {
     }
 
     public Set<Patient> getPatients() {
+        if (pendingPatients != null) {
+            for (Map.Entry<Patient, Boolean> pending : pendingPatients.entrySet()) {
+                if (pending.getValue()) {
+                    patients.add(pending.getKey());
+                } else {
+                    patients.remove(pending.getKey());
+                }
+            }
+            pendingPatients = null;
+        }
         return patients;
     }
 
     public Practitioner setPatients(Set<Patient> patients) {
         this.patients = patients;
+        this.pendingPatients = null;
+        return this;
+    }
+
+    /**
+     * Maintains the inverse side of {@link Patient#addPractitioner(Practitioner)} without loading it.
+     */
+    Practitioner addPatient(Patient patient) {
+        if (isPatientsLoaded()) {
+            patients.add(patient);
+        } else {
+            pendingPatient(patient, true);
+        }
         return this;
     }
 
+    /**
+     * Maintains the inverse side of {@link Patient#removePractitioner(Practitioner)} without loading it.
+     */
+    Practitioner removePatient(Patient patient) {
+        if (isPatientsLoaded()) {
+            patients.remove(patient);
+        } else {
+            pendingPatient(patient, false);
+        }
+        return this;
+    }
+
+    private boolean isPatientsLoaded() {
+        // the attribute first: reading it is what would trigger the load
+        return Hibernate.isPropertyInitialized(this, "patients") && Hibernate.isInitialized(patients);
+    }
+
+    private void pendingPatient(Patient patient, boolean added) {
+        if (pendingPatients == null) {
+            pendingPatients = new LinkedHashMap<>();
+        }
+        pendingPatients.put(patient, added);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
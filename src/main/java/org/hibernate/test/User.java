@@ -51,6 +51,13 @@ public class User {
         return this;
     }
 
+    /**
+     * Maintains the inverse side of {@link Practitioner#setUser(User)}: writing a lazy attribute does not load it.
+     */
+    void assignPractitioner(Practitioner practitioner) {
+        this.practitioner = practitioner;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bytecode.enhance.spi.interceptor.BytecodeLazyAttributeInterceptor;
+import org.hibernate.bugs.load.LoadTests;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.hibernate.engine.spi.PersistentAttributeInterceptor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures, with JOL, the heap cost of {@code MessageWithLazyToOne} graphs loaded in a session: the retained bytes
+ * per entity (the persistence context graph with the entities, minus the same graph without), and the shallow
+ * size of each part (entity, interceptor, lazy-state set, EntityEntry, snapshot, proxy).
+ * <p>
+ * Subclasses toggle enhancement as proxy. The entity count can be changed with
+ * {@code -Dhhh13134.footprint.entities}, e.g. 1000000 with a large enough heap.
+ */
+public abstract class AbstractHHH13134MemoryFootprintTestCase extends AbstractHHH13134TestCase {
+
+    private static final int ENTITIES = Integer.getInteger("hhh13134.footprint.entities", 10_000);
+
+    protected abstract boolean enhancementAsProxy();
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, String.valueOf(enhancementAsProxy()));
+    }
+
+    @Override
+    @Before
+    public void setup() {
+        LoadTests.assumeEnabled();
+        super.setup();
+    }
+
+    @Override
+    protected void insertData(Session s) {
+        insertPractitioners(s);
+        s.flush();
+
+        s.doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into MessageWithLazyToOne (id, patient_id, practitioner_id) values (?, ?, ?)")) {
+                for (int i = 0; i < ENTITIES; i++) {
+                    insert.setLong(1, i);
+                    insert.setLong(2, i % 5);
+                    insert.setLong(3, i % 5);
+                    insert.addBatch();
+                    if (i % 1_000 == 999) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+        });
+    }
+
+    @Test
+    public void enhanced_entities_footprint() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        final long baseline = GraphLayout.parseInstance(s).totalSize();
+        final List<MessageWithLazyToOne> messages = s.createQuery(
+                "SELECT m FROM MessageWithLazyToOne m", MessageWithLazyToOne.class).list();
+        Assert.assertEquals(ENTITIES, messages.size());
+        final GraphLayout loaded = GraphLayout.parseInstance(s);
+
+        log.info(String.format("enhancement as proxy %s: %d entities, %.1f retained bytes per entity",
+                enhancementAsProxy(), messages.size(), (double) (loaded.totalSize() - baseline) / messages.size()));
+        logShallowSizes((SessionImplementor) s, messages.get(0));
+
+        tx.commit();
+        s.close();
+    }
+
+    @Test
+    public void proxies_footprint() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        final long baseline = GraphLayout.parseInstance(s).totalSize();
+        final List<MessageWithLazyToOne> references = new ArrayList<>(ENTITIES);
+        for (long i = 0; i < ENTITIES; i++) {
+            references.add(s.getReference(MessageWithLazyToOne.class, i));
+        }
+        final GraphLayout loaded = GraphLayout.parseInstance(s);
+
+        log.info(String.format("enhancement as proxy %s: %d references, %.1f retained bytes per reference",
+                enhancementAsProxy(), references.size(), (double) (loaded.totalSize() - baseline) / references.size()));
+        logShallowSizes((SessionImplementor) s, references.get(0));
+
+        tx.commit();
+        s.close();
+    }
+
+    private void logShallowSizes(SessionImplementor session, Object entity) {
+        log.info("  entity object:   " + shallowSize(entity) + " bytes (" + entity.getClass().getName() + ")");
+
+        if (entity instanceof HibernateProxy) {
+            log.info("  proxy:           " + shallowSize(entity) + " bytes, initializer "
+                    + shallowSize(((HibernateProxy) entity).getHibernateLazyInitializer()) + " bytes");
+            return;
+        }
+
+        if (entity instanceof PersistentAttributeInterceptable) {
+            final PersistentAttributeInterceptor interceptor =
+                    ((PersistentAttributeInterceptable) entity).$$_hibernate_getInterceptor();
+            if (interceptor != null) {
+                log.info("  interceptor:     " + shallowSize(interceptor) + " bytes (" + interceptor.getClass().getSimpleName() + ")");
+                if (interceptor instanceof BytecodeLazyAttributeInterceptor) {
+                    // the attribute names are shared, only the set itself is per instance
+                    final Object initialized = ((BytecodeLazyAttributeInterceptor) interceptor).getInitializedLazyAttributeNames();
+                    log.info("  lazy-state set:  " + GraphLayout.parseInstance(initialized).totalSize() + " bytes, names included");
+                }
+            }
+        }
+
+        final EntityEntry entry = session.getPersistenceContext().getEntry(entity);
+        if (entry != null) {
+            log.info("  EntityEntry:     " + shallowSize(entry) + " bytes");
+            if (entry.getLoadedState() != null) {
+                log.info("  snapshot:        " + shallowSize(entry.getLoadedState()) + " bytes");
+            }
+        }
+    }
+
+    private static long shallowSize(Object object) {
+        return ClassLayout.parseInstance(object).instanceSize();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.test.*;
+import org.hibernate.testing.junit4.BaseCoreFunctionalTestCase;
+import org.junit.Before;
+
+/**
+ * The entities of the reproducer, and the data shared by the tests of a class, inserted before the first one:
+ * practitioners 0 to 4, each with its user {@code login<id>}, a patient and a message of each kind of the same id.
+ * <p>
+ * Subclasses add to the data by overriding {@link #insertData(Session)}. Tests changing it restore it.
+ */
+public abstract class AbstractHHH13134TestCase extends BaseCoreFunctionalTestCase {
+
+    protected static final int PRACTITIONERS = 5;
+
+    private boolean inserted = false;
+
+    @Override
+    protected Class[] getAnnotatedClasses() {
+        return new Class[]{
+                MessageWithLazyToOne.class,
+                MessageWithoutLazyToOne.class,
+                Patient.class,
+                Practitioner.class,
+                User.class,
+        };
+    }
+
+    @Override
+    protected String getBaseForMappings() {
+        return "org/hibernate/test/";
+    }
+
+    @Before
+    public void setup() {
+
+        if (inserted)
+            return;
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        insertData(s);
+
+        tx.commit();
+        s.close();
+
+        inserted = true;
+    }
+
+    protected void insertData(Session s) {
+        insertPractitioners(s);
+
+        for (long i = 0; i < PRACTITIONERS; i++) {
+
+            Patient p = s.getReference(Patient.class, i);
+            Practitioner practitioner = s.getReference(Practitioner.class, i);
+
+            MessageWithoutLazyToOne mwo = new MessageWithoutLazyToOne()
+                    .setId(i)
+                    .setPatient(p)
+                    .setPractitioner(practitioner);
+            s.persist(mwo);
+
+            MessageWithLazyToOne mw = new MessageWithLazyToOne()
+                    .setId(i)
+                    .setPatient(p)
+                    .setPractitioner(practitioner);
+            s.persist(mw);
+
+        }
+    }
+
+    /**
+     * Inserts the practitioners, their user and their patient, without messages.
+     */
+    protected void insertPractitioners(Session s) {
+        for (long i = 0; i < PRACTITIONERS; i++) {
+
+            Practitioner practitioner = new Practitioner()
+                    .setId(i);
+            s.persist(practitioner);
+
+            User user = new User()
+                    .setLogin("login" + i)
+                    .setName("John")
+                    .setPractitioner(practitioner);
+            s.persist(user);
+
+            Patient p = new Patient()
+                    .setId(i)
+                    .setName("Jane")
+                    .addPractitioner(practitioner);
+            s.persist(p);
+
+        }
+    }
+}
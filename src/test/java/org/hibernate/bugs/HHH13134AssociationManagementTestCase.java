@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.CollectionStatistics;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Bidirectional helpers writing the inverse sides, {@code Practitioner.patients} and {@code User.practitioner}, only
+ * when already loaded: otherwise the change is recorded and applied when the inverse side is read, so that linking
+ * a patient to a practitioner never loads the practitioner's patients. An uninitialized proxy is left untouched: the
+ * change is only visible through it once flushed.
+ */
+public class HHH13134AssociationManagementTestCase extends AbstractHHH13134TestCase {
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+    }
+
+    @Test
+    public void add_practitioner_does_not_load_inverse_side() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        Patient p = s.find(Patient.class, 1L);
+        Practitioner practitioner = s.find(Practitioner.class, 2L);
+        log.info("Adding Practitioner to Patient...");
+        p.addPractitioner(practitioner);
+
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(0, patientsStatistics(statistics).getLoadCount());
+
+        s = openSession();
+        tx = s.beginTransaction();
+
+        practitioner = s.find(Practitioner.class, 2L);
+        Assert.assertEquals(2, practitioner.getPatients().size());
+        Assert.assertTrue(practitioner.getPatients().contains(s.find(Patient.class, 1L)));
+
+        // back to the setup data
+        s.find(Patient.class, 1L).removePractitioner(practitioner);
+
+        tx.commit();
+        s.close();
+    }
+
+    @Test
+    public void pending_changes_are_applied_when_read() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        Patient added = s.find(Patient.class, 0L);
+        Patient removed = s.find(Patient.class, 4L);
+        Practitioner practitioner = s.find(Practitioner.class, 4L);
+        added.addPractitioner(practitioner);
+        removed.removePractitioner(practitioner);
+        Assert.assertEquals(0, patientsStatistics(statistics).getLoadCount());
+
+        log.info("Getting Practitioner.patients...");
+        // loaded without the pending changes, not flushed yet, then applied
+        Assert.assertEquals(1, practitioner.getPatients().size());
+        Assert.assertTrue(practitioner.getPatients().contains(added));
+        Assert.assertEquals(1, patientsStatistics(statistics).getLoadCount());
+
+        tx.rollback();
+        s.close();
+    }
+
+    @Test
+    public void set_user_does_not_load_previous_user() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        Practitioner practitioner = s.find(Practitioner.class, 3L);
+        User user = new User()
+                .setLogin("login5")
+                .setName("Jane");
+        log.info("Setting Practitioner.user...");
+        practitioner.setUser(user);
+        Assert.assertSame(practitioner, user.getPractitioner());
+        s.persist(user);
+
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(0, statistics.getEntityStatistics(User.class.getName()).getLoadCount());
+
+        s = openSession();
+        tx = s.beginTransaction();
+
+        practitioner = s.find(Practitioner.class, 3L);
+        Assert.assertEquals("login5", practitioner.getUser().getLogin());
+
+        // back to the setup data
+        user = practitioner.getUser();
+        practitioner.setUser(s.find(User.class, "login3"));
+        s.remove(user);
+
+        tx.commit();
+        s.close();
+    }
+
+    @Test
+    public void uninitialized_proxy_is_not_updated() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        Patient p = s.find(Patient.class, 0L);
+        Practitioner practitioner = s.getReference(Practitioner.class, 4L);
+        p.addPractitioner(practitioner);
+        Assert.assertFalse(Hibernate.isInitialized(practitioner));
+
+        // known limitation: nothing can be recorded on a proxy without initializing it, and loading the
+        // collection does not flush, so the inverse side misses the change until the session is flushed
+        // and the collection read again in another session
+        Assert.assertEquals(1, practitioner.getPatients().size());
+        Assert.assertFalse(practitioner.getPatients().contains(p));
+
+        tx.rollback();
+        s.close();
+    }
+
+    private static CollectionStatistics patientsStatistics(Statistics statistics) {
+        return statistics.getCollectionStatistics(Practitioner.class.getName() + ".patients");
+    }
+}
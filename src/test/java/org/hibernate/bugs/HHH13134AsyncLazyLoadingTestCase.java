@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.bugs.loader.AsyncAssociationLoaders;
+import org.hibernate.bugs.loader.BatchingLoader;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Concurrent requests for {@code Practitioner.user} are grouped into one batched query instead of one blocking
+ * lazy-group select per enhanced getter.
+ */
+public class HHH13134AsyncLazyLoadingTestCase extends AbstractHHH13134TestCase {
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+    }
+
+    @Test
+    public void concurrent_requests_are_batched() {
+
+        // tasks are queued until every request has been issued, as if they had all arrived during one round trip
+        final List<Runnable> tasks = new ArrayList<>();
+        final BatchingLoader<Long, User> loader = AsyncAssociationLoaders.practitionerUser(sessionFactory(), tasks::add);
+
+        final List<CompletionStage<User>> users = new ArrayList<>();
+        for (long i = 0; i < 5; i++) {
+            users.add(loader.load(i));
+        }
+        // same association requested twice, resolved once
+        final CompletionStage<User> again = loader.load(1L);
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        log.info("running " + tasks.size() + " batch(es)...");
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).run();
+        }
+        //    select
+        //        practition0_.id as col_0_0_,
+        //        user1_.login as col_1_0_,
+        //        ...
+        //    from
+        //        Practitioner practition0_
+        //    inner join
+        //        User user1_
+        //            on practition0_.user_login=user1_.login
+        //    where
+        //        practition0_.id in (? , ? , ? , ? , ?)
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+
+        for (int i = 0; i < users.size(); i++) {
+            Assert.assertEquals("login" + i, users.get(i).toCompletableFuture().join().getLogin());
+        }
+        Assert.assertSame(users.get(1).toCompletableFuture().join(), again.toCompletableFuture().join());
+    }
+
+    @Test
+    public void missing_association_completes_with_null() {
+
+        final BatchingLoader<Long, User> loader = AsyncAssociationLoaders.practitionerUser(sessionFactory(), Runnable::run);
+
+        final CompletableFuture<User> user = loader.load(42L).toCompletableFuture();
+        Assert.assertTrue(user.isDone());
+        Assert.assertNull(user.join());
+    }
+
+    @Test
+    public void rejected_drain_fails_the_queued_keys() {
+
+        final AtomicBoolean rejecting = new AtomicBoolean(true);
+        final Executor executor = task -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("closed");
+            }
+            task.run();
+        };
+        final BatchingLoader<Long, User> loader = new BatchingLoader<>(
+                ids -> Collections.singletonMap(1L, new User()), executor, 10);
+
+        final CompletableFuture<User> rejected = loader.load(1L).toCompletableFuture();
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+
+        // the failed drain was not left scheduled: the next load schedules one
+        rejecting.set(false);
+        Assert.assertNotNull(loader.load(1L).toCompletableFuture().join());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.bugs.load.LoadTests;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.PersistentAttributeInterceptable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enhancement metadata is produced at build time by {@code hibernate-enhance-maven-plugin}: checks the classes on
+ * the classpath are the enhanced ones, so that booting never falls back to un-enhanced entities silently, and
+ * measures what skipping the JDBC metadata lookup saves when building the SessionFactory. Skipping it also drops the
+ * configured JDBC batch size, so it is a measurement only, not a setting of these tests.
+ */
+public class HHH13134BootstrapTestCase extends AbstractHHH13134TestCase {
+
+    private static final String USE_JDBC_METADATA_DEFAULTS = "hibernate.temp.use_jdbc_metadata_defaults";
+
+    private static final int BOOTS = 5;
+
+    private boolean jdbcMetadataLookup = true;
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+
+        configuration.setProperty(USE_JDBC_METADATA_DEFAULTS, String.valueOf(jdbcMetadataLookup));
+    }
+
+    @Test
+    public void entities_are_enhanced_at_build_time() {
+        for (Class entityClass : getAnnotatedClasses()) {
+            Assert.assertTrue(
+                    entityClass.getName() + " is not enhanced, run mvn process-classes or the enhance goal",
+                    PersistentAttributeInterceptable.class.isAssignableFrom(entityClass));
+        }
+    }
+
+    @Test
+    public void session_factory_startup_time() {
+        LoadTests.assumeEnabled();
+
+        try {
+            final long withLookup = medianStartupNanos(true);
+            final long withoutLookup = medianStartupNanos(false);
+            log.info(String.format("SessionFactory built in %dms with the JDBC metadata lookup, %dms without (median of %d boots)",
+                    TimeUnit.NANOSECONDS.toMillis(withLookup), TimeUnit.NANOSECONDS.toMillis(withoutLookup), BOOTS));
+        }
+        finally {
+            jdbcMetadataLookup = true;
+            rebuildSessionFactory();
+        }
+    }
+
+    private long medianStartupNanos(boolean lookup) {
+        jdbcMetadataLookup = lookup;
+        final long[] durations = new long[BOOTS];
+        for (int i = 0; i < BOOTS; i++) {
+            final long start = System.nanoTime();
+            rebuildSessionFactory();
+            durations[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(durations);
+        return durations[BOOTS / 2];
+    }
+}
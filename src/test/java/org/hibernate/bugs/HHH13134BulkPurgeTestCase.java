@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.bulk.MessagePurger;
+import org.hibernate.bugs.load.LoadTests;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.test.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.SharedCacheMode;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purging or reassigning messages by id range evicts only the affected messages and the
+ * {@code Practitioner.messages} collections they belonged to, and invalidates the cached queries over messages.
+ * <p>
+ * The benchmark row count can be changed with {@code -Dhhh13134.purge.rows}, e.g. 10000000.
+ */
+public class HHH13134BulkPurgeTestCase extends AbstractHHH13134TestCase {
+
+    private static final int ROWS = Integer.getInteger("hhh13134.purge.rows", 100_000);
+
+    private ExecutorService executor;
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+
+        configuration.setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ALL.name());
+        configuration.setProperty(AvailableSettings.USE_QUERY_CACHE, Boolean.TRUE.toString());
+    }
+
+    @Before
+    public void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void stopExecutor() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void purge_evicts_only_affected_entries() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        for (long id = 100; id < 110; id++) {
+            s.persist(new MessageWithoutLazyToOne()
+                    .setId(id)
+                    .setPatient(s.getReference(Patient.class, 1L))
+                    .setPractitioner(s.getReference(Practitioner.class, 1L)));
+        }
+        tx.commit();
+        s.close();
+
+        s = openSession();
+        tx = s.beginTransaction();
+        s.find(MessageWithoutLazyToOne.class, 0L);
+        s.find(MessageWithoutLazyToOne.class, 100L);
+        s.find(Practitioner.class, 1L).getMessages().size();
+        s.find(Practitioner.class, 2L).getMessages().size();
+        Assert.assertEquals(11, practitionerMessageIds(s, 1L).size());
+        tx.commit();
+        s.close();
+
+        Assert.assertTrue(sessionFactory().getCache().containsCollection(Practitioner.class.getName() + ".messages", 1L));
+
+        final long deleted = new MessagePurger(sessionFactory(), executor, 3)
+                .purge(MessageWithoutLazyToOne.class, 100L, 110L);
+        Assert.assertEquals(10, deleted);
+
+        Assert.assertFalse(sessionFactory().getCache().containsEntity(MessageWithoutLazyToOne.class, 100L));
+        Assert.assertFalse(sessionFactory().getCache().containsCollection(Practitioner.class.getName() + ".messages", 1L));
+        // untouched by the purge
+        Assert.assertTrue(sessionFactory().getCache().containsEntity(MessageWithoutLazyToOne.class, 0L));
+        Assert.assertTrue(sessionFactory().getCache().containsCollection(Practitioner.class.getName() + ".messages", 2L));
+
+        s = openSession();
+        tx = s.beginTransaction();
+        Assert.assertEquals(1, s.find(Practitioner.class, 1L).getMessages().size());
+        // the cached result is stale: the message table was invalidated
+        Assert.assertEquals(1, practitionerMessageIds(s, 1L).size());
+        tx.commit();
+        s.close();
+    }
+
+    @Test
+    public void reassign_evicts_old_and_new_practitioner_messages() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        for (long id = 200; id < 205; id++) {
+            s.persist(new MessageWithoutLazyToOne()
+                    .setId(id)
+                    .setPatient(s.getReference(Patient.class, 3L))
+                    .setPractitioner(s.getReference(Practitioner.class, 3L)));
+        }
+        tx.commit();
+        s.close();
+
+        s = openSession();
+        tx = s.beginTransaction();
+        Assert.assertEquals(6, s.find(Practitioner.class, 3L).getMessages().size());
+        Assert.assertEquals(1, s.find(Practitioner.class, 4L).getMessages().size());
+        Assert.assertEquals(1, practitionerMessageIds(s, 4L).size());
+        tx.commit();
+        s.close();
+
+        final long updated = new MessagePurger(sessionFactory(), executor, 2)
+                .reassign(MessageWithoutLazyToOne.class, 200L, 205L, 4L);
+        Assert.assertEquals(5, updated);
+
+        Assert.assertFalse(sessionFactory().getCache().containsCollection(Practitioner.class.getName() + ".messages", 3L));
+        Assert.assertFalse(sessionFactory().getCache().containsCollection(Practitioner.class.getName() + ".messages", 4L));
+
+        s = openSession();
+        tx = s.beginTransaction();
+        Assert.assertEquals(1, s.find(Practitioner.class, 3L).getMessages().size());
+        Assert.assertEquals(6, s.find(Practitioner.class, 4L).getMessages().size());
+        Assert.assertEquals(6, practitionerMessageIds(s, 4L).size());
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(5, new MessagePurger(sessionFactory(), executor, 2)
+                .purge(MessageWithoutLazyToOne.class, 200L, 205L));
+    }
+
+    @Test
+    public void purge_benchmark() {
+        LoadTests.assumeEnabled();
+
+        final long firstId = 1_000_000L;
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        s.doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into MessageWithLazyToOne (id, patient_id, practitioner_id) values (?, ?, ?)")) {
+                for (int i = 0; i < ROWS; i++) {
+                    insert.setLong(1, firstId + i);
+                    insert.setLong(2, i % 5);
+                    insert.setLong(3, i % 5);
+                    insert.addBatch();
+                    if (i % 1_000 == 999) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+        });
+        tx.commit();
+        s.close();
+
+        final long start = System.nanoTime();
+        final long deleted = new MessagePurger(sessionFactory(), executor, 10_000)
+                .purge(MessageWithLazyToOne.class, firstId, firstId + ROWS);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        log.info(deleted + " rows purged in " + elapsed + "ms");
+        Assert.assertEquals(ROWS, deleted);
+    }
+
+    private static List<Long> practitionerMessageIds(Session s, long practitionerId) {
+        return s.createQuery(
+                "SELECT m.id FROM MessageWithoutLazyToOne m WHERE m.practitioner.id = :practitionerId", Long.class)
+                .setParameter("practitionerId", practitionerId)
+                .setCacheable(true)
+                .list();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.bugs.cache.CacheInvalidationIntegrator;
+import org.hibernate.bugs.cache.Invalidations;
+import org.hibernate.bugs.cache.LoopbackInvalidationTransport;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.SharedCacheMode;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Second-level cache and query space invalidations are coalesced per transaction and broadcast to the other nodes
+ * through the loopback transport, which also plays the remote node here.
+ */
+public class HHH13134CacheInvalidationTestCase extends AbstractHHH13134TestCase {
+
+    private final LoopbackInvalidationTransport transport = new LoopbackInvalidationTransport();
+    private final CacheInvalidationIntegrator integrator = new CacheInvalidationIntegrator(transport);
+    private final List<Invalidations> published = new CopyOnWriteArrayList<>();
+    private final Consumer<Invalidations> recorder = published::add;
+
+    @Override
+    protected void prepareBootstrapRegistryBuilder(BootstrapServiceRegistryBuilder builder) {
+        super.prepareBootstrapRegistryBuilder(builder);
+        builder.applyIntegrator(integrator);
+    }
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+
+        configuration.setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ALL.name());
+        configuration.setProperty(AvailableSettings.USE_QUERY_CACHE, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+    }
+
+    @Before
+    public void record() {
+        published.clear();
+        transport.subscribe(recorder);
+    }
+
+    @After
+    public void stopRecording() {
+        transport.unsubscribe(recorder);
+    }
+
+    @Test
+    public void invalidations_coalesced_per_transaction() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        final Patient p = s.find(Patient.class, 1L);
+        for (int i = 0; i < 3; i++) {
+            p.setName("Jane " + i);
+            s.flush();
+        }
+        p.setName("Jane");
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(1, published.size());
+        final Invalidations invalidations = published.get(0);
+        Assert.assertEquals(integrator.getNodeId(), invalidations.getOrigin());
+        Assert.assertEquals(
+                Collections.singletonMap(Patient.class.getName(), Collections.<Serializable>singleton(1L)),
+                invalidations.getEntities());
+    }
+
+    @Test
+    public void rolled_back_transaction_publishes_nothing() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        s.find(Patient.class, 1L).setName("Jane Doe");
+        s.flush();
+        tx.rollback();
+        s.close();
+
+        Assert.assertTrue(published.isEmpty());
+    }
+
+    @Test
+    public void remote_invalidation_evicts_local_entry() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        s.find(Patient.class, 2L);
+        tx.commit();
+        s.close();
+        Assert.assertTrue(sessionFactory().getCache().containsEntity(Patient.class, 2L));
+
+        final Invalidations remote = new Invalidations("remote-node");
+        remote.addEntity(Patient.class.getName(), 2L);
+        transport.publish(remote);
+
+        Assert.assertFalse(sessionFactory().getCache().containsEntity(Patient.class, 2L));
+    }
+
+    @Test
+    public void collection_change_publishes_collection_and_query_spaces() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        final Practitioner practitioner = s.find(Practitioner.class, 3L);
+        final MessageWithoutLazyToOne message = new MessageWithoutLazyToOne()
+                .setId(300L)
+                .setPatient(s.getReference(Patient.class, 3L))
+                .setPractitioner(practitioner);
+        s.persist(message);
+        practitioner.getMessages().add(message);
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(1, published.size());
+        final Invalidations invalidations = published.get(0);
+        Assert.assertEquals(
+                Collections.singletonMap(Practitioner.class.getName() + ".messages", Collections.<Serializable>singleton(3L)),
+                invalidations.getCollections());
+        for (Serializable space : sessionFactory().getMetamodel().entityPersister(MessageWithoutLazyToOne.class).getQuerySpaces()) {
+            Assert.assertTrue(invalidations.getQuerySpaces().contains(space));
+        }
+
+        s = openSession();
+        tx = s.beginTransaction();
+        final MessageWithoutLazyToOne added = s.find(MessageWithoutLazyToOne.class, 300L);
+        s.find(Practitioner.class, 3L).getMessages().remove(added);
+        s.remove(added);
+        tx.commit();
+        s.close();
+    }
+
+    @Test
+    public void remote_invalidation_evicts_local_collection() {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        s.find(Practitioner.class, 4L).getMessages().size();
+        tx.commit();
+        s.close();
+
+        final String role = Practitioner.class.getName() + ".messages";
+        Assert.assertTrue(sessionFactory().getCache().containsCollection(role, 4L));
+
+        final Invalidations remote = new Invalidations("remote-node");
+        remote.addCollection(role, 4L);
+        transport.publish(remote);
+
+        Assert.assertFalse(sessionFactory().getCache().containsCollection(role, 4L));
+    }
+
+    @Test
+    public void remote_invalidation_makes_local_query_results_stale() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Assert.assertEquals(5, patientIds().size());
+        Assert.assertEquals(5, patientIds().size());
+        Assert.assertEquals(1, statistics.getQueryCacheHitCount());
+
+        final Invalidations remote = new Invalidations("remote-node");
+        remote.addQuerySpaces(sessionFactory().getMetamodel().entityPersister(Patient.class).getQuerySpaces());
+        transport.publish(remote);
+
+        Assert.assertEquals(5, patientIds().size());
+        Assert.assertEquals(1, statistics.getQueryCacheHitCount());
+        Assert.assertEquals(2, statistics.getQueryCacheMissCount());
+    }
+
+    private List<Long> patientIds() {
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        final List<Long> ids = s.createQuery("SELECT p.id FROM Patient p", Long.class)
+                .setCacheable(true)
+                .list();
+        tx.commit();
+        s.close();
+        return ids;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.load.ContentionSampler;
+import org.hibernate.bugs.load.LatencySamples;
+import org.hibernate.bugs.load.LoadTests;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hammers one SessionFactory from many threads with a mix of the HHH13134 workloads and reports, per workload,
+ * p50/p99 latencies and throughput, along with the locks the workers were most often found waiting on.
+ * <p>
+ * Tune with {@code -Dhhh13134.load.threads} and {@code -Dhhh13134.load.iterations} (per thread).
+ */
+public class HHH13134ConcurrentLoadTestCase extends AbstractHHH13134TestCase {
+
+    private static final int THREADS = Integer.getInteger("hhh13134.load.threads", 16);
+    private static final int ITERATIONS = Integer.getInteger("hhh13134.load.iterations", 500);
+
+    private static final String[] WORKLOADS = {"find", "join fetch", "lazy traversal", "collection init", "insert"};
+
+    private final AtomicLong nextId = new AtomicLong(1_000L);
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.POOL_SIZE, String.valueOf(THREADS));
+    }
+
+    @Test
+    public void mixed_workloads_on_shared_session_factory() throws InterruptedException {
+        LoadTests.assumeEnabled();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final Queue<LatencySamples[]> results = new ConcurrentLinkedQueue<>();
+        final List<Thread> workers = new ArrayList<>();
+        final ContentionSampler[] sampler = new ContentionSampler[1];
+
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t;
+            workers.add(new Thread(() -> {
+                final LatencySamples[] samples = new LatencySamples[WORKLOADS.length];
+                for (int w = 0; w < WORKLOADS.length; w++) {
+                    samples[w] = new LatencySamples();
+                }
+                try {
+                    start.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        final int workload = (i + offset) % WORKLOADS.length;
+                        final long id = i % 5;
+                        final long begin = System.nanoTime();
+                        run(workload, id);
+                        samples[workload].record(System.nanoTime() - begin);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                } finally {
+                    sampler[0].recordCurrentThread();
+                    results.add(samples);
+                }
+            }, "hhh13134-load-" + t));
+        }
+
+        sampler[0] = new ContentionSampler(workers, 5);
+        final Thread samplerThread = new Thread(sampler[0], "hhh13134-contention-sampler");
+        samplerThread.setDaemon(true);
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        samplerThread.start();
+        final long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - begin;
+        sampler[0].stop();
+        samplerThread.join();
+
+        final LatencySamples[] merged = new LatencySamples[WORKLOADS.length];
+        for (int w = 0; w < WORKLOADS.length; w++) {
+            merged[w] = new LatencySamples();
+            for (LatencySamples[] samples : results) {
+                merged[w].merge(samples[w]);
+            }
+        }
+
+        final double seconds = elapsed / 1e9d;
+        log.info(String.format("%d threads x %d iterations in %.2fs, %.0f ops/s",
+                THREADS, ITERATIONS, seconds, THREADS * ITERATIONS / seconds));
+        for (int w = 0; w < WORKLOADS.length; w++) {
+            log.info(String.format("%-16s %7d ops  p50 %6dus  p99 %6dus",
+                    WORKLOADS[w], merged[w].size(), merged[w].percentileMicros(50), merged[w].percentileMicros(99)));
+        }
+        log.info("blocked time: " + sampler[0].blockedTimeMillis() + "ms");
+        for (String hotSpot : sampler[0].topHotSpots(10)) {
+            log.info("contention: " + hotSpot);
+        }
+
+        for (Throwable failure : failures) {
+            log.error("workload failed", failure);
+        }
+        Assert.assertTrue(failures.size() + " failed workers", failures.isEmpty());
+    }
+
+    private void run(int workload, long id) {
+        Session s = openSession();
+        // a failed assertion must still give the connection and its permit back
+        try {
+            Transaction tx = s.beginTransaction();
+
+            switch (workload) {
+                case 0:
+                    Assert.assertNotNull(s.find(MessageWithoutLazyToOne.class, id));
+                    break;
+                case 1:
+                    s.createQuery(
+                            "SELECT m " +
+                                    "FROM MessageWithLazyToOne m " +
+                                    "JOIN FETCH m.patient " +
+                                    "JOIN FETCH m.practitioner as practitioner " +
+                                    "JOIN FETCH practitioner.user " +
+                                    "WHERE m.id = :id",
+                            MessageWithLazyToOne.class)
+                            .setParameter("id", id)
+                            .getSingleResult();
+                    break;
+                case 2:
+                    MessageWithLazyToOne m = s.find(MessageWithLazyToOne.class, id);
+                    m.getPatient().getName();
+                    m.getPractitioner().getUser().getLogin();
+                    break;
+                case 3:
+                    Assert.assertEquals(1, s.find(Patient.class, id).getPractitioners().size());
+                    break;
+                default:
+                    s.persist(new MessageWithoutLazyToOne()
+                            .setId(nextId.getAndIncrement())
+                            .setPatient(s.getReference(Patient.class, id))
+                            .setPractitioner(s.getReference(Practitioner.class, id)));
+                    break;
+            }
+
+            tx.commit();
+        } finally {
+            s.close();
+        }
+    }
+}
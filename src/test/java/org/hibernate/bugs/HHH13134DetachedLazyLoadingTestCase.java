@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.loader.DetachedEntityLoader;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Where {@code multiple_occurrences_fail} gets a {@code LazyInitializationException} once the session is closed,
+ * the detached {@code Patient} references are initialized through {@link DetachedEntityLoader}: one batched query
+ * for all of them, on a bounded pool of read-only sessions.
+ */
+public class HHH13134DetachedLazyLoadingTestCase extends AbstractHHH13134TestCase {
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+
+        // disable enhancement as proxy
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.FALSE.toString());
+    }
+
+    @Test
+    public void detached_references_initialized_in_one_batch() throws InterruptedException {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        log.info("select...");
+        List<MessageWithoutLazyToOne> list = s.createQuery(
+                "SELECT m FROM MessageWithoutLazyToOne m ",
+                MessageWithoutLazyToOne.class).list();
+        log.info(list.size() + " results");
+
+        tx.commit();
+        s.close();
+
+        final List<Patient> patients = new ArrayList<>();
+        for (MessageWithoutLazyToOne m : list) {
+            patients.add(m.getPatient());
+        }
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        try (DetachedEntityLoader loader = new DetachedEntityLoader(sessionFactory(), 2, 100)) {
+            loader.initializeAll(patients);
+        }
+        // one query for the 5 patients:
+        //    select
+        //        patient0_.id as id1_2_0_,
+        //        patient0_.name as name2_2_0_
+        //    from
+        //        Patient patient0_
+        //    where
+        //        patient0_.id in (?,?,?,?,?)
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+
+        for (Patient p : patients) {
+            Assert.assertTrue(Hibernate.isInitialized(p));
+            Assert.assertEquals("Jane", p.getName());
+        }
+    }
+
+    @Test
+    public void detached_load_by_id() throws InterruptedException {
+
+        try (DetachedEntityLoader loader = new DetachedEntityLoader(sessionFactory(), 2, 100)) {
+            final Patient p = loader.load(Patient.class, 2L).toCompletableFuture().join();
+            Assert.assertEquals("Jane", p.getName());
+            Assert.assertNull(loader.load(Patient.class, 42L).toCompletableFuture().join());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Named fetch profiles declared on the entities, activated per session: under "inbox", finding a
+ * {@code MessageWithLazyToOne} joins its patient, practitioner and practitioner's user in one statement, without
+ * lazy-group follow-ups; under "patientChart", finding a {@code Patient} joins its practitioners.
+ */
+public class HHH13134FetchProfileTestCase extends AbstractHHH13134TestCase {
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+
+        // enable enhancement as proxy, the join columns being selected with the entity
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.TRUE.toString());
+    }
+
+    @Test
+    public void inbox_profile() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        s.enableFetchProfile("inbox");
+        Transaction tx = s.beginTransaction();
+
+        log.info("Find MessageWithLazyToOne under the inbox profile...");
+        MessageWithLazyToOne m = s.find(MessageWithLazyToOne.class, 1L);
+        //    select
+        //        messagewit0_.id as id1_0_0_,
+        //        messagewit0_.patient_id as patient_2_0_0_,
+        //        messagewit0_.practitioner_id as practiti3_0_0_,
+        //        patient1_.id as id1_2_1_,
+        //        patient1_.name as name2_2_1_,
+        //        practition2_.id as id1_4_2_,
+        //        practition2_.user_login as user_log2_4_2_,
+        //        user3_.login as login1_5_3_,
+        //        user3_.name as name2_5_3_
+        //    from
+        //        MessageWithLazyToOne messagewit0_
+        //    left outer join
+        //        Patient patient1_
+        //            on messagewit0_.patient_id=patient1_.id
+        //    left outer join
+        //        Practitioner practition2_
+        //            on messagewit0_.practitioner_id=practition2_.id
+        //    left outer join
+        //        User user3_
+        //            on practition2_.user_login=user3_.login
+        //    where
+        //        messagewit0_.id=?
+        log.info("Getting Message.patient.name...");
+        m.getPatient().getName();
+        log.info("Getting Message.practitioner.user.name...");
+        m.getPractitioner().getUser().getName();
+        // no more query
+
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void patient_chart_profile() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        s.enableFetchProfile("patientChart");
+        Transaction tx = s.beginTransaction();
+
+        log.info("Find Patient under the patientChart profile...");
+        Patient p = s.find(Patient.class, 1L);
+        Assert.assertEquals(1, p.getPractitioners().size());
+
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void profile_is_per_session() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        MessageWithLazyToOne m = s.find(MessageWithLazyToOne.class, 1L);
+        m.getPractitioner().getUser().getName();
+
+        tx.commit();
+        s.close();
+
+        // message, then practitioner, then user
+        Assert.assertTrue(statistics.getPrepareStatementCount() > 1);
+    }
+}
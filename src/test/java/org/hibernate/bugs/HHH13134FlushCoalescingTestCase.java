@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * With {@link FlushMode#COMMIT}, the changes of a write-heavy session are only flushed once: repeated updates of the
+ * same {@code Patient} collapse into one UPDATE, additions and removals of the same {@code Patient_Practitioner}
+ * row cancel out, and the remaining statements are ordered and JDBC-batched per table.
+ */
+public class HHH13134FlushCoalescingTestCase extends AbstractHHH13134TestCase {
+
+    private static final int BATCH_SIZE = 20;
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+
+        configuration.setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(BATCH_SIZE));
+        configuration.setProperty(AvailableSettings.ORDER_INSERTS, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.ORDER_UPDATES, Boolean.TRUE.toString());
+    }
+
+    @Test
+    public void repeated_updates_flushed_once() {
+
+        // dropped to 0 when batch updates are not known to be supported
+        Assert.assertEquals(BATCH_SIZE, sessionFactory().getSessionFactoryOptions().getJdbcBatchSize());
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        s.setHibernateFlushMode(FlushMode.COMMIT);
+        Transaction tx = s.beginTransaction();
+
+        final Patient p = s.find(Patient.class, 3L);
+        for (int i = 0; i < 10; i++) {
+            p.setName("Jane " + i);
+        }
+        for (long id = 10; id < 13; id++) {
+            Practitioner practitioner = new Practitioner().setId(id);
+            s.persist(practitioner);
+            p.addPractitioner(practitioner);
+        }
+        // added then removed: no row at all
+        final Practitioner other = s.find(Practitioner.class, 4L);
+        p.addPractitioner(other);
+        p.removePractitioner(other);
+
+        log.info("commit...");
+        tx.commit();
+        // insert into Practitioner (user_login, id) values (?, ?)          x3, one batch
+        // update Patient set name=? where id=?                             x1
+        // insert into Patient_Practitioner (Patient_id, practitioners_id)  x3, one batch
+        s.close();
+
+        // Patient, Patient.practitioners and the other Practitioner selected, then the three statements above:
+        // a batch prepares its statement once for all its rows
+        Assert.assertEquals(6, statistics.getPrepareStatementCount());
+        Assert.assertEquals(1, statistics.getFlushCount());
+        Assert.assertEquals(1, statistics.getEntityUpdateCount());
+        Assert.assertEquals(3, statistics.getEntityInsertCount());
+        Assert.assertEquals(1, statistics.getCollectionUpdateCount());
+
+        s = openSession();
+        Transaction check = s.beginTransaction();
+        final Patient reloaded = s.find(Patient.class, 3L);
+        Assert.assertEquals("Jane 9", reloaded.getName());
+        Assert.assertEquals(4, reloaded.getPractitioners().size());
+
+        // back to the shared data
+        reloaded.setName("Jane");
+        for (long id = 10; id < 13; id++) {
+            final Practitioner added = s.find(Practitioner.class, id);
+            reloaded.removePractitioner(added);
+            s.remove(added);
+        }
+        check.commit();
+        s.close();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.query.InboxPager;
+import org.hibernate.bugs.query.KeysetPage;
+import org.hibernate.bugs.load.LoadTests;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyset pagination of a practitioner's inbox with {@link InboxPager}, and a benchmark comparing the latency of a
+ * page at depth with the first page, and with offset pagination at the same depth.
+ * <p>
+ * The benchmark depth can be changed with {@code -Dhhh13134.inbox.depth}, e.g. 1000000.
+ */
+public class HHH13134KeysetPaginationTestCase extends AbstractHHH13134TestCase {
+
+    private static final int DEPTH = Integer.getInteger("hhh13134.inbox.depth", 100_000);
+    private static final int PAGE_SIZE = 10;
+    private static final int SAMPLES = 15;
+    // a keyset page at depth costs an index seek more than the first page, not a scan of the skipped rows
+    private static final int DEEP_PAGE_FACTOR = 3;
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, String.valueOf(PAGE_SIZE));
+    }
+
+    @Override
+    protected void insertData(Session s) {
+        super.insertData(s);
+
+        // a deep inbox for practitioner 1 when running load tests, a short one for practitioner 2
+        final int depth = LoadTests.enabled() ? DEPTH : 0;
+        s.flush();
+        s.doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into MessageWithoutLazyToOne (id, patient_id, practitioner_id) values (?, ?, ?)")) {
+                for (int i = 0; i < depth; i++) {
+                    insert.setLong(1, 1_000_000L + i);
+                    insert.setLong(2, i % 5);
+                    insert.setLong(3, 1L);
+                    insert.addBatch();
+                    if (i % 1_000 == 999) {
+                        insert.executeBatch();
+                    }
+                }
+                for (int i = 0; i < 25; i++) {
+                    insert.setLong(1, 100L + i);
+                    insert.setLong(2, i % 5);
+                    insert.setLong(3, 2L);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        });
+    }
+
+    @Test
+    public void pages_in_id_order() {
+
+        final InboxPager pager = new InboxPager(PAGE_SIZE);
+        final Statistics statistics = sessionFactory().getStatistics();
+        final List<Long> ids = new ArrayList<>();
+
+        KeysetPage<MessageWithoutLazyToOne> page = null;
+        do {
+            statistics.clear();
+            Session s = openSession();
+            Transaction tx = s.beginTransaction();
+
+            page = page == null ? pager.firstPage(s, 2L) : pager.nextPage(s, 2L, page);
+            for (MessageWithoutLazyToOne m : page.getItems()) {
+                ids.add(m.getId());
+                m.getPatient().getName();
+            }
+
+            tx.commit();
+            s.close();
+            // the page, then at most one batch of patients and one of practitioners
+            Assert.assertTrue(statistics.getPrepareStatementCount() <= 3);
+        } while (page.hasNext());
+
+        // message 2 from the setup, then 100 to 124
+        Assert.assertEquals(26, ids.size());
+        Assert.assertEquals(Long.valueOf(2L), ids.get(0));
+        for (int i = 1; i < ids.size(); i++) {
+            Assert.assertEquals(Long.valueOf(99L + i), ids.get(i));
+        }
+    }
+
+    @Test
+    public void keyset_page_latency_at_depth() {
+        LoadTests.assumeEnabled();
+
+        final InboxPager pager = new InboxPager(PAGE_SIZE);
+        final long deepLastId = 1_000_000L + DEPTH - PAGE_SIZE - 1;
+
+        // warm up
+        for (int i = 0; i < 20; i++) {
+            keysetPage(pager, Long.MIN_VALUE);
+            keysetPage(pager, deepLastId);
+        }
+
+        final long[] first = new long[SAMPLES];
+        final long[] deep = new long[SAMPLES];
+        final long[] offset = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            first[i] = keysetPage(pager, Long.MIN_VALUE);
+            deep[i] = keysetPage(pager, deepLastId);
+            offset[i] = offsetPage(DEPTH - PAGE_SIZE + 1);
+        }
+        final long firstMedian = median(first);
+        final long deepMedian = median(deep);
+
+        log.info(String.format("page at depth %d, median of %d: keyset first %dus, keyset deep %dus, offset deep %dus",
+                DEPTH, SAMPLES, firstMedian / 1_000, deepMedian / 1_000, median(offset) / 1_000));
+        Assert.assertTrue(
+                String.format("keyset page at depth %d took %dus, the first page %dus", DEPTH, deepMedian / 1_000, firstMedian / 1_000),
+                deepMedian <= DEEP_PAGE_FACTOR * firstMedian + TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static long median(long[] samples) {
+        final long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private long keysetPage(InboxPager pager, long lastId) {
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        final long start = System.nanoTime();
+        final KeysetPage<MessageWithoutLazyToOne> page = pager.pageAfter(s, 1L, lastId);
+        final long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(PAGE_SIZE, page.getItems().size());
+
+        tx.commit();
+        s.close();
+        return elapsed;
+    }
+
+    private long offsetPage(int offset) {
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        final long start = System.nanoTime();
+        final List<MessageWithoutLazyToOne> page = s.createQuery(
+                "SELECT m FROM MessageWithoutLazyToOne m WHERE m.practitioner.id = :practitionerId ORDER BY m.id",
+                MessageWithoutLazyToOne.class)
+                .setParameter("practitionerId", 1L)
+                .setFirstResult(offset)
+                .setMaxResults(PAGE_SIZE)
+                .list();
+        final long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(PAGE_SIZE, page.size());
+
+        tx.commit();
+        s.close();
+        return elapsed;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.cache.OffHeapRegionFactory;
+import org.hibernate.bugs.cache.OffHeapStorageAccess;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.persistence.SharedCacheMode;
+
+/**
+ * {@code Patient}, {@code Practitioner} and {@code User} cached off-heap by {@link OffHeapRegionFactory}, their
+ * state decoded back from the compact encoding on each hit.
+ */
+public class HHH13134OffHeapCacheTestCase extends AbstractHHH13134TestCase {
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+
+        // enable enhancement as proxy, for Practitioner.user_login to be part of the cached state
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.TRUE.toString());
+
+        configuration.setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.CACHE_REGION_FACTORY, OffHeapRegionFactory.class.getName());
+        configuration.setProperty(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ALL.name());
+    }
+
+    @Test
+    public void entities_read_back_from_off_heap_regions() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        sessionFactory().getCache().evictAllRegions();
+
+        log.info("loading, caching...");
+        readPatientAndPractitioner(1L);
+        Assert.assertTrue(sessionFactory().getCache().containsEntity(Patient.class, 1L));
+        Assert.assertTrue(sessionFactory().getCache().containsEntity(Practitioner.class, 1L));
+        Assert.assertTrue(sessionFactory().getCache().containsEntity(User.class, "login1"));
+
+        statistics.clear();
+        log.info("loading from the off-heap regions...");
+        readPatientAndPractitioner(1L);
+        Assert.assertEquals(0, statistics.getPrepareStatementCount());
+        Assert.assertEquals(3, statistics.getSecondLevelCacheHitCount());
+    }
+
+    @Test
+    public void updated_entity_is_evicted() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        sessionFactory().getCache().evictAllRegions();
+        readPatientAndPractitioner(2L);
+        Assert.assertTrue(sessionFactory().getCache().containsEntity(Patient.class, 2L));
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        s.find(Patient.class, 2L).setName("Jane Doe");
+        tx.commit();
+        s.close();
+        Assert.assertFalse(sessionFactory().getCache().containsEntity(Patient.class, 2L));
+
+        statistics.clear();
+        s = openSession();
+        tx = s.beginTransaction();
+        Assert.assertEquals("Jane Doe", s.find(Patient.class, 2L).getName());
+        tx.commit();
+        s.close();
+        Assert.assertEquals(1, statistics.getSecondLevelCacheMissCount());
+        Assert.assertEquals(0, statistics.getSecondLevelCacheHitCount());
+        Assert.assertTrue(sessionFactory().getCache().containsEntity(Patient.class, 2L));
+
+        s = openSession();
+        tx = s.beginTransaction();
+        s.find(Patient.class, 2L).setName("Jane");
+        tx.commit();
+        s.close();
+    }
+
+    @Test
+    public void storage_is_bounded_and_reuses_blocks() {
+
+        final long maxBytes = 2 * 64 * 1024;
+        final OffHeapStorageAccess storage = new OffHeapStorageAccess(maxBytes, 16);
+        for (long i = 0; i < 10_000; i++) {
+            storage.putIntoCache(i, "login" + i, null);
+            Assert.assertEquals("login" + i, storage.getFromCache(i, null));
+        }
+        Assert.assertTrue(storage.getUsedBytes() <= maxBytes);
+        Assert.assertEquals(storage.getUsedBytes(), storage.getEntryCount() * 64L);
+
+        storage.evictData();
+        Assert.assertEquals(0, storage.getEntryCount());
+        Assert.assertEquals(0, storage.getUsedBytes());
+        storage.release();
+    }
+
+    @Test
+    public void pages_move_to_the_size_class_needing_them() {
+
+        final long maxBytes = 2 * 64 * 1024;
+        final OffHeapStorageAccess storage = new OffHeapStorageAccess(maxBytes, 16);
+        for (long i = 0; i < 10_000; i++) {
+            storage.putIntoCache(i, "login" + i, null);
+        }
+        Assert.assertEquals(maxBytes, storage.getUsedBytes());
+
+        // a single block takes a whole page: one of the pages of small entries is emptied for it
+        final String large = new String(new char[40_000]).replace('\0', 'x');
+        storage.putIntoCache("large", large, null);
+        Assert.assertEquals(large, storage.getFromCache("large", null));
+        Assert.assertEquals(1024 + 1, storage.getEntryCount());
+
+        storage.putIntoCache("small", "login", null);
+        Assert.assertEquals("login", storage.getFromCache("small", null));
+        Assert.assertEquals(large, storage.getFromCache("large", null));
+        storage.release();
+    }
+
+    private void readPatientAndPractitioner(long id) {
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        Assert.assertEquals("Jane", s.find(Patient.class, id).getName());
+        Assert.assertEquals("John", s.find(Practitioner.class, id).getUser().getName());
+
+        tx.commit();
+        s.close();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.bugs.query.PartitionedQueryExecutor;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * A report over {@code MessageWithLazyToOne} split by id range, each partition read on its own session and
+ * connection, its patients and practitioners resolved in batches before the results are merged. Enhancement as proxy
+ * is enabled: without it, each {@code NO_PROXY} patient is loaded by its own lazy-group select.
+ */
+public class HHH13134PartitionedReadTestCase extends AbstractHHH13134TestCase {
+
+    private static final int MESSAGES = 1_000;
+
+    private static final String REPORT_QUERY = "SELECT m " +
+            "FROM MessageWithLazyToOne m " +
+            "WHERE m.id >= :" + PartitionedQueryExecutor.PARTITION_FROM + " " +
+            "AND m.id < :" + PartitionedQueryExecutor.PARTITION_TO;
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, "100");
+
+        // enable enhancement as proxy, so that the patients of a partition are batch fetched
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.POOL_SIZE, "8");
+    }
+
+    @Override
+    protected void insertData(Session s) {
+        insertPractitioners(s);
+        s.flush();
+
+        s.doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "insert into MessageWithLazyToOne (id, patient_id, practitioner_id) values (?, ?, ?)")) {
+                for (int i = 0; i < MESSAGES; i++) {
+                    insert.setLong(1, i);
+                    insert.setLong(2, i % 5);
+                    insert.setLong(3, i % 5);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        });
+    }
+
+    @Test
+    public void ordered_partitions() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        final PartitionedQueryExecutor executor = new PartitionedQueryExecutor(sessionFactory(), ForkJoinPool.commonPool(), 4);
+
+        final List<Long> ids = executor.stream(REPORT_QUERY, MessageWithLazyToOne.class, 0L, MESSAGES, true, this::resolve)
+                .map(MessageWithLazyToOne::getId)
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(LongStream.range(0, MESSAGES).boxed().collect(Collectors.toList()), ids);
+        // per partition, the report query, then one batch for its 5 patients
+        Assert.assertEquals(4 * 2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void unordered_partitions() {
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final List<MessageWithLazyToOne> messages;
+        try {
+            messages = new PartitionedQueryExecutor(sessionFactory(), pool, 7)
+                    .stream(REPORT_QUERY, MessageWithLazyToOne.class, 0L, MESSAGES, false, this::resolve)
+                    .collect(Collectors.toList());
+        } finally {
+            pool.shutdown();
+        }
+
+        final Set<Long> ids = messages.stream().map(MessageWithLazyToOne::getId).collect(Collectors.toSet());
+        Assert.assertEquals(MESSAGES, messages.size());
+        Assert.assertEquals(LongStream.range(0, MESSAGES).boxed().collect(Collectors.toSet()), ids);
+        for (MessageWithLazyToOne m : messages) {
+            // detached, resolved by the partition
+            Assert.assertTrue(Hibernate.isInitialized(m.getPatient()));
+            Assert.assertEquals("Jane", m.getPatient().getName());
+            Assert.assertEquals(m.getId() % 5, m.getPractitioner().getId().longValue());
+        }
+    }
+
+    private void resolve(MessageWithLazyToOne m) {
+        m.getPatient().getName();
+        m.getPractitioner().getId();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.persistence.SharedCacheMode;
+
+/**
+ * The query cache only keeps the ids of the root entities: with the whole fetched graph in the second-level cache
+ * (and enhancement as proxy, so that the FK lazy groups are part of the cached state), a cache hit rebuilds the
+ * {@code MessageWithLazyToOne} graph with zero SQL. Invalidation is driven by the table update timestamps.
+ */
+public class HHH13134QueryCacheTestCase extends AbstractHHH13134TestCase {
+
+    private static final String INBOX_QUERY = "SELECT m " +
+            "FROM MessageWithLazyToOne m " +
+            "JOIN FETCH m.patient " +
+            "JOIN FETCH m.practitioner as practitioner " +
+            "JOIN FETCH practitioner.user " +
+            "WHERE m.id = 1L";
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+
+        // enable enhancement as proxy
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.TRUE.toString());
+
+        configuration.setProperty(AvailableSettings.USE_SECOND_LEVEL_CACHE, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.USE_QUERY_CACHE, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ALL.name());
+    }
+
+    @Test
+    public void cached_join_fetch_graph_without_sql() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        sessionFactory().getCache().evictAllRegions();
+
+        log.info("first execution, caching...");
+        readInbox();
+
+        statistics.clear();
+        log.info("second execution, from the caches...");
+        readInbox();
+        Assert.assertEquals(1, statistics.getQueryCacheHitCount());
+        Assert.assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void cached_join_fetch_graph_invalidated_by_update() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        sessionFactory().getCache().evictAllRegions();
+
+        readInbox();
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+        s.find(Patient.class, 1L).setName("Jane Doe");
+        tx.commit();
+        s.close();
+
+        statistics.clear();
+        log.info("Patient table updated, executing again...");
+        final MessageWithLazyToOne m = readInbox();
+        Assert.assertEquals(0, statistics.getQueryCacheHitCount());
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+        Assert.assertEquals("Jane Doe", m.getPatient().getName());
+
+        s = openSession();
+        tx = s.beginTransaction();
+        s.find(Patient.class, 1L).setName("Jane");
+        tx.commit();
+        s.close();
+    }
+
+    private MessageWithLazyToOne readInbox() {
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        MessageWithLazyToOne m = s.createQuery(INBOX_QUERY, MessageWithLazyToOne.class)
+                .setCacheable(true)
+                .getSingleResult();
+        m.getPatient().getName();
+        m.getPractitioner().getUser().getLogin();
+        m.getPractitioner().getUser().getName();
+
+        tx.commit();
+        s.close();
+        return m;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.jdbc.SemaphoreConnectionProvider;
+import org.hibernate.bugs.jdbc.StatementCacheStatistics;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Without enhancement as proxy, each lazy-group initialization issues its own tiny select: with a per-connection
+ * statement cache, these are prepared once and reused by the following sessions.
+ */
+public class HHH13134StatementCacheTestCase extends AbstractHHH13134TestCase {
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
+
+        // disable enhancement as proxy, for the lazy-group selects
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.FALSE.toString());
+
+        configuration.setProperty(AvailableSettings.CONNECTION_PROVIDER, SemaphoreConnectionProvider.class.getName());
+        configuration.setProperty(SemaphoreConnectionProvider.STATEMENT_CACHE_SIZE, "32");
+        // one connection, one cache
+        configuration.setProperty(AvailableSettings.POOL_SIZE, "1");
+    }
+
+    @Test
+    public void lazy_group_statements_are_reused() {
+
+        final StatementCacheStatistics statistics = sessionFactory().getServiceRegistry()
+                .getService(ConnectionProvider.class)
+                .unwrap(SemaphoreConnectionProvider.class)
+                .getStatementCacheStatistics();
+
+        log.info("warming up...");
+        readLazily(1L);
+        statistics.clear();
+
+        for (long i = 0; i < 5; i++) {
+            readLazily(i);
+        }
+        log.info(statistics.toString());
+        // the same shapes over and over:
+        //    select ... from MessageWithLazyToOne messagewit0_ where messagewit0_.id=?
+        //    select messagewit_.patient_id, messagewit_.practitioner_id from MessageWithLazyToOne messagewit_ where messagewit_.id=?
+        //    select ... from Patient patient0_ where patient0_.id=?
+        //    select ... from Practitioner practition0_ where practition0_.id=?
+        //    select practition_.user_login from Practitioner practition_ where practition_.id=?
+        //    select ... from User user0_ where user0_.login=?
+        Assert.assertEquals(0, statistics.getMissCount());
+        Assert.assertTrue(statistics.getHitCount() > 0);
+        Assert.assertEquals(1d, statistics.getReuseRatio(), 0d);
+    }
+
+    private void readLazily(long id) {
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        MessageWithLazyToOne m = s.find(MessageWithLazyToOne.class, id);
+        m.getPatient().getId();
+        m.getPractitioner().getUser().getLogin();
+
+        tx.commit();
+        s.close();
+    }
+}
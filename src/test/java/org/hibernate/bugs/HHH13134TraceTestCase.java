@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.trace.StatementShapes;
+import org.hibernate.bugs.trace.TraceStatementInspector;
+import org.hibernate.bugs.trace.TracingSessionEventListener;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The lazy loading scenario of {@code HHH13134WithoutEnhancementAsProxyTestCase}, traced by
+ * {@link TracingSessionEventListener} instead of {@code SHOW_SQL}: one compact event per statement, referencing
+ * its shape, dumped as JSON lines.
+ */
+public class HHH13134TraceTestCase extends AbstractHHH13134TestCase {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
+        configuration.setProperty(AvailableSettings.STATEMENT_INSPECTOR, TraceStatementInspector.class.getName());
+
+        // disable enhancement as proxy, for the lazy-group selects
+        configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.FALSE.toString());
+    }
+
+    @Test
+    public void lazy_loads_traced_on_demand() throws Exception {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+        statistics.clear();
+
+        Session s = openSession();
+        final TracingSessionEventListener trace = TracingSessionEventListener.attach(s, Long.MAX_VALUE, folder.getRoot().toPath());
+        Transaction tx = s.beginTransaction();
+
+        MessageWithLazyToOne m = s.find(MessageWithLazyToOne.class, 1L);
+        m.getPatient().getId();
+        m.getPractitioner().getUser().getLogin();
+
+        tx.commit();
+        s.close();
+
+        Assert.assertEquals(statistics.getPrepareStatementCount(), trace.getTrace().getRecordedCount());
+
+        final StringWriter out = new StringWriter();
+        trace.getTrace().writeJsonLines(trace.getSessionId(), out);
+        log.info(out.toString());
+
+        // the Practitioner.user lazy-group select has its own shape
+        boolean userLoginShape = false;
+        for (String line : out.toString().split("\n")) {
+            if (line.startsWith("{\"shape\"")) {
+                final int shape = Integer.parseInt(line.substring(9, line.indexOf(',')));
+                userLoginShape |= StatementShapes.sqlOf(shape).contains("user_login");
+            } else {
+                Assert.assertTrue(line.contains("\"binds\":1"));
+            }
+        }
+        Assert.assertTrue(userLoginShape);
+    }
+
+    @Test
+    public void slow_session_dumped_on_end() throws Exception {
+
+        Session s = openSession();
+        TracingSessionEventListener.attach(s, 0L, folder.getRoot().toPath());
+        Transaction tx = s.beginTransaction();
+
+        s.find(MessageWithLazyToOne.class, 2L).getPatient().getId();
+
+        tx.commit();
+        s.close();
+
+        final Path file = folder.getRoot().toPath().resolve("hhh13134-trace.jsonl");
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Assert.assertFalse(lines.isEmpty());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hibernate.bugs;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.bugs.jdbc.SemaphoreConnectionProvider;
+import org.hibernate.bugs.load.LoadTests;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.test.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the HHH13134 read scenarios from many concurrent session-per-request tasks, on virtual threads when the JVM
+ * provides them, against {@link SemaphoreConnectionProvider}.
+ * <p>
+ * The number of tasks can be changed with {@code -Dhhh13134.load.tasks}.
+ */
+public class HHH13134VirtualThreadLoadTestCase extends AbstractHHH13134TestCase {
+
+    private static final int TASKS = Integer.getInteger("hhh13134.load.tasks", 10_000);
+
+    // Add in any settings that are specific to your test.  See resources/hibernate.properties for the defaults.
+    @Override
+    protected void configure(Configuration configuration) {
+        super.configure(configuration);
+
+        // 10k tasks: no SQL on stdout
+        configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString());
+        configuration.setProperty(AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString());
+
+        configuration.setProperty(AvailableSettings.CONNECTION_PROVIDER, SemaphoreConnectionProvider.class.getName());
+        configuration.setProperty(SemaphoreConnectionProvider.ACQUISITION_TIMEOUT, "60000");
+    }
+
+    @Test
+    public void read_scenarios_from_concurrent_sessions() throws Exception {
+        LoadTests.assumeEnabled();
+
+        final AtomicInteger reads = new AtomicInteger();
+        final ExecutorService executor = newThreadPerTaskExecutor();
+        final long start = System.nanoTime();
+        try {
+            final List<Future<?>> futures = new ArrayList<>(TASKS);
+            for (int i = 0; i < TASKS; i++) {
+                final long id = i % 5;
+                final boolean joinFetch = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    if (joinFetch) {
+                        readWithJoinFetch(id);
+                    } else {
+                        readLazily(id);
+                    }
+                    reads.incrementAndGet();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        log.info(reads.get() + " sessions in " + elapsed + "ms");
+        Assert.assertEquals(TASKS, reads.get());
+    }
+
+    private void readLazily(long id) {
+        Session s = openSession();
+        // a failed assertion must still give the connection and its permit back
+        try {
+            Transaction tx = s.beginTransaction();
+
+            MessageWithLazyToOne m = s.find(MessageWithLazyToOne.class, id);
+            Assert.assertEquals(Long.valueOf(id), m.getPatient().getId());
+            Assert.assertEquals("login" + id, m.getPractitioner().getUser().getLogin());
+
+            tx.commit();
+        } finally {
+            s.close();
+        }
+    }
+
+    private void readWithJoinFetch(long id) {
+        Session s = openSession();
+        try {
+            Transaction tx = s.beginTransaction();
+
+            MessageWithLazyToOne m = s.createQuery(
+                    "SELECT m " +
+                            "FROM MessageWithLazyToOne m " +
+                            "JOIN FETCH m.patient " +
+                            "JOIN FETCH m.practitioner as practitioner " +
+                            "JOIN FETCH practitioner.user " +
+                            "WHERE m.id = :id",
+                    MessageWithLazyToOne.class)
+                    .setParameter("id", id)
+                    .getSingleResult();
+            Assert.assertEquals("Jane", m.getPatient().getName());
+            Assert.assertEquals("login" + id, m.getPractitioner().getUser().getLogin());
+
+            tx.commit();
+        } finally {
+            s.close();
+        }
+    }
+
+    /**
+     * Virtual threads when running on a JDK providing them, a bounded pool of platform threads otherwise: the
+     * sources target Java 8.
+     */
+    private ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("virtual threads unavailable, using platform threads");
+            return Executors.newFixedThreadPool(200);
+        }
+    }
+}
@@ -20,13 +20,17 @@ import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
 import org.hibernate.test.*;
 import org.hibernate.testing.junit4.BaseCoreFunctionalTestCase;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class HHH13134WithoutEnhancementAsProxyBugTestCase extends BaseCoreFunctionalTestCase {
 
@@ -55,7 +59,7 @@ public class HHH13134WithoutEnhancementAsProxyBugTestCase extends BaseCoreFuncti
 
         configuration.setProperty(AvailableSettings.SHOW_SQL, Boolean.TRUE.toString());
         configuration.setProperty(AvailableSettings.FORMAT_SQL, Boolean.TRUE.toString());
-        //configuration.setProperty( AvailableSettings.GENERATE_STATISTICS, "true" );
+        configuration.setProperty(AvailableSettings.GENERATE_STATISTICS, Boolean.TRUE.toString());
 
         // disable enhancement as proxy
         configuration.setProperty(AvailableSettings.ALLOW_ENHANCEMENT_AS_PROXY, Boolean.FALSE.toString());
@@ -151,4 +155,51 @@ public class HHH13134WithoutEnhancementAsProxyBugTestCase extends BaseCoreFuncti
             Assert.assertThrows(LazyInitializationException.class, p::getName);
         }
     }
+
+    /**
+     * The persistence context is the identity map keyed by FK value: 5 rows pointing at the same Patient
+     * must cost exactly what 1 row costs, the reference being resolved once per query.
+     */
+    @Test
+    public void one_and_multiple_occurrences_resolve_reference_once() {
+
+        final Statistics statistics = sessionFactory().getStatistics();
+
+        statistics.clear();
+        resolvePatients("SELECT m FROM MessageWithoutLazyToOne m where m.id = 1", 1);
+        final long oneOccurrenceStatements = statistics.getPrepareStatementCount();
+        final long oneOccurrencePatientLoads = statistics.getEntityStatistics(Patient.class.getName()).getLoadCount();
+
+        statistics.clear();
+        resolvePatients("SELECT m FROM MessageWithoutLazyToOne m ", 5);
+        final long multipleOccurrencesStatements = statistics.getPrepareStatementCount();
+        final long multipleOccurrencesPatientLoads = statistics.getEntityStatistics(Patient.class.getName()).getLoadCount();
+
+        log.info(oneOccurrenceStatements + " statements for 1 row, " + multipleOccurrencesStatements + " statements for 5 rows");
+        Assert.assertEquals(1, oneOccurrencePatientLoads);
+        Assert.assertEquals(oneOccurrencePatientLoads, multipleOccurrencesPatientLoads);
+        Assert.assertEquals(oneOccurrenceStatements, multipleOccurrencesStatements);
+    }
+
+    private void resolvePatients(String hql, int expectedRows) {
+
+        Session s = openSession();
+        Transaction tx = s.beginTransaction();
+
+        log.info("select...");
+        List<MessageWithoutLazyToOne> list = s.createQuery(hql, MessageWithoutLazyToOne.class).list();
+        log.info(list.size() + " results");
+        Assert.assertEquals(expectedRows, list.size());
+
+        final Set<Patient> patients = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MessageWithoutLazyToOne m : list) {
+            patients.add(m.getPatient());
+            m.getPatient().getName();
+        }
+        // all the rows share the same FK value, hence the same instance
+        Assert.assertEquals(1, patients.size());
+
+        tx.commit();
+        s.close();
+    }
 }
@@ -0,0 +1,165 @@
+package org.hibernate.bugs.bulk;
+
+import org.hibernate.Cache;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.Joinable;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.test.MessageWithoutLazyToOne;
+import org.hibernate.test.Practitioner;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Deletes or reassigns messages by id range, in chunks running in parallel sessions.
+ * <p>
+ * An HQL bulk statement evicts the whole message region, along with every collection region over the message table
+ * ({@code Practitioner.messages}). Each chunk here is a native statement synchronized on no query space, so that
+ * Hibernate evicts nothing by itself, followed by the eviction of the affected messages and of the
+ * {@code Practitioner.messages} collections they belonged to or now belong to. The statement of a chunk only touches
+ * the ids its select read, so that a message inserted in the range meanwhile is not updated without being evicted.
+ * The message table is invalidated in the update timestamps, so that cached queries over it are not returned.
+ * Sessions opened before the purge still hold the instances they loaded: clear them.
+ */
+public class MessagePurger {
+
+    private static final String NO_QUERY_SPACE = "MessagePurger";
+    private static final String PRACTITIONER_MESSAGES = Practitioner.class.getName() + ".messages";
+
+    private final SessionFactory sessionFactory;
+    private final ExecutorService executor;
+    private final int chunkSize;
+
+    public MessagePurger(SessionFactory sessionFactory, ExecutorService executor, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.sessionFactory = sessionFactory;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Deletes the messages of the given class whose id is in {@code [fromId, toId)}.
+     *
+     * @return the number of deleted rows
+     */
+    public long purge(Class<?> messageClass, long fromId, long toId) {
+        return inChunks(messageClass, fromId, toId, "delete from %s where id in (:ids)", null);
+    }
+
+    /**
+     * Assigns the messages of the given class whose id is in {@code [fromId, toId)} to another practitioner.
+     *
+     * @return the number of updated rows
+     */
+    public long reassign(Class<?> messageClass, long fromId, long toId, long practitionerId) {
+        return inChunks(messageClass, fromId, toId,
+                "update %s set practitioner_id = :practitionerId where id in (:ids)", practitionerId);
+    }
+
+    private long inChunks(Class<?> messageClass, long fromId, long toId, String statement, Long practitionerId) {
+        final List<Future<Integer>> chunks = new ArrayList<>();
+        for (long lo = fromId; lo < toId; lo += chunkSize) {
+            final long chunkFrom = lo;
+            final long chunkTo = Math.min(toId, lo + chunkSize);
+            chunks.add(executor.submit(() -> executeChunk(messageClass, statement, practitionerId, chunkFrom, chunkTo)));
+        }
+
+        long affected = 0L;
+        try {
+            for (Future<Integer> chunk : chunks) {
+                affected += chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HibernateException("Interrupted while updating " + messageClass.getSimpleName(), e);
+        } catch (ExecutionException e) {
+            throw new HibernateException("Unable to update " + messageClass.getSimpleName(), e.getCause());
+        }
+        return affected;
+    }
+
+    private int executeChunk(Class<?> messageClass, String statement, Long practitionerId, long fromId, long toId) {
+        final SessionFactoryImplementor factory = sessionFactory.unwrap(SessionFactoryImplementor.class);
+        final String entityName = messageClass.getName();
+        final String[] spaces = {
+                ((Joinable) factory.getMetamodel().entityPersister(entityName)).getTableName()
+        };
+        final TimestampsCache timestamps = factory.getSessionFactoryOptions().isQueryCacheEnabled()
+                ? factory.getCache().getTimestampsCache()
+                : null;
+        final boolean inPractitionerMessages = MessageWithoutLazyToOne.class.equals(messageClass);
+
+        final List<Object[]> rows;
+        final int affected;
+        Session s = sessionFactory.openSession();
+        Transaction tx = s.beginTransaction();
+        try {
+            rows = s.createQuery(
+                    "SELECT m.id, m.practitioner.id FROM " + entityName + " m WHERE m.id >= :fromId AND m.id < :toId",
+                    Object[].class)
+                    .setParameter("fromId", fromId)
+                    .setParameter("toId", toId)
+                    .list();
+            if (rows.isEmpty()) {
+                tx.commit();
+                return 0;
+            }
+            final List<Long> ids = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                ids.add((Long) row[0]);
+            }
+            if (timestamps != null) {
+                timestamps.preInvalidate(spaces, (SharedSessionContractImplementor) s);
+            }
+            final NativeQuery<?> query = s.createNativeQuery(String.format(statement, spaces[0]))
+                    .addSynchronizedQuerySpace(NO_QUERY_SPACE)
+                    .setParameterList("ids", ids);
+            if (practitionerId != null) {
+                query.setParameter("practitionerId", practitionerId);
+            }
+            affected = query.executeUpdate();
+            tx.commit();
+            if (timestamps != null) {
+                timestamps.invalidate(spaces, (SharedSessionContractImplementor) s);
+            }
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            s.close();
+        }
+
+        final Cache cache = sessionFactory.getCache();
+        final Set<Long> practitionerIds = new HashSet<>();
+        for (Object[] row : rows) {
+            cache.evictEntityData(messageClass, (Long) row[0]);
+            if (row[1] != null) {
+                practitionerIds.add((Long) row[1]);
+            }
+        }
+        if (inPractitionerMessages) {
+            if (practitionerId != null) {
+                practitionerIds.add(practitionerId);
+            }
+            for (Long id : practitionerIds) {
+                cache.evictCollectionData(PRACTITIONER_MESSAGES, id);
+            }
+        }
+        return affected;
+    }
+}
@@ -0,0 +1,182 @@
+package org.hibernate.bugs.cache;
+
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.boot.Metadata;
+import org.hibernate.cache.spi.CacheImplementor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the second-level caches of several nodes coherent: the cache entries a transaction updates or deletes, and
+ * the query spaces it writes to, are collected, coalesced, and published as one {@link Invalidations} batch once it
+ * commits; batches received from the other nodes evict the matching entries locally and invalidate the query spaces
+ * in the local update timestamps, so that cached query results over them are not returned.
+ * <p>
+ * Register with {@code BootstrapServiceRegistryBuilder#applyIntegrator}.
+ */
+public class CacheInvalidationIntegrator implements Integrator,
+        PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener, PostCollectionRemoveEventListener {
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final InvalidationTransport transport;
+    private final Map<SharedSessionContractImplementor, Invalidations> pending = new ConcurrentHashMap<>();
+    private final Consumer<Invalidations> receiver = this::receive;
+
+    private transient SessionFactoryImplementor sessionFactory;
+    private transient CacheImplementor cache;
+
+    public CacheInvalidationIntegrator(InvalidationTransport transport) {
+        this.transport = transport;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void integrate(
+            Metadata metadata,
+            SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry) {
+        this.sessionFactory = sessionFactory;
+        cache = sessionFactory.getCache();
+
+        final EventListenerRegistry listeners = serviceRegistry.getService(EventListenerRegistry.class);
+        listeners.appendListeners(EventType.POST_INSERT, this);
+        listeners.appendListeners(EventType.POST_UPDATE, this);
+        listeners.appendListeners(EventType.POST_DELETE, this);
+        listeners.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        listeners.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        listeners.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+
+        transport.subscribe(receiver);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        transport.unsubscribe(receiver);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        // nothing cached yet for the entity, but queries over its tables are stale
+        pendingFor(event.getSession()).addQuerySpaces(event.getPersister().getQuerySpaces());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        invalidateEntity(event.getSession(), event.getPersister(), event.getId());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        invalidateEntity(event.getSession(), event.getPersister(), event.getId());
+    }
+
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        // collected in-transaction, published on completion
+        return false;
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        invalidateCollection(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        invalidateCollection(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        invalidateCollection(event);
+    }
+
+    private void invalidateEntity(EventSource session, EntityPersister persister, Serializable id) {
+        final Invalidations invalidations = pendingFor(session);
+        if (persister.canWriteToCache()) {
+            invalidations.addEntity(persister.getEntityName(), id);
+        }
+        invalidations.addQuerySpaces(persister.getQuerySpaces());
+    }
+
+    private void invalidateCollection(AbstractCollectionEvent event) {
+        final String role = event.getCollection().getRole();
+        final CollectionPersister persister = event.getSession().getFactory().getMetamodel().collectionPersister(role);
+        final Serializable ownerId = event.getAffectedOwnerIdOrNull();
+        final Invalidations invalidations = pendingFor(event.getSession());
+        if (persister.hasCache() && ownerId != null) {
+            invalidations.addCollection(role, ownerId);
+        }
+        if (!persister.isInverse()) {
+            invalidations.addQuerySpaces(persister.getCollectionSpaces());
+        }
+    }
+
+    private Invalidations pendingFor(EventSource session) {
+        return pending.computeIfAbsent(session, s -> {
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) this::publish);
+            return new Invalidations(nodeId);
+        });
+    }
+
+    private void publish(boolean success, SharedSessionContractImplementor session) {
+        final Invalidations invalidations = pending.remove(session);
+        if (success && invalidations != null && !invalidations.isEmpty()) {
+            transport.publish(invalidations);
+        }
+    }
+
+    private void receive(Invalidations invalidations) {
+        if (nodeId.equals(invalidations.getOrigin()) || cache == null) {
+            return;
+        }
+        for (Map.Entry<String, Set<Serializable>> entry : invalidations.getEntities().entrySet()) {
+            for (Serializable id : entry.getValue()) {
+                cache.evictEntityData(entry.getKey(), id);
+            }
+        }
+        for (Map.Entry<String, Set<Serializable>> entry : invalidations.getCollections().entrySet()) {
+            for (Serializable ownerId : entry.getValue()) {
+                cache.evictCollectionData(entry.getKey(), ownerId);
+            }
+        }
+        if (!invalidations.getQuerySpaces().isEmpty() && sessionFactory.getSessionFactoryOptions().isQueryCacheEnabled()) {
+            final String[] spaces = invalidations.getQuerySpaces().toArray(new String[0]);
+            try (Session session = sessionFactory.openTemporarySession()) {
+                cache.getTimestampsCache().invalidate(spaces, (SharedSessionContractImplementor) session);
+            }
+        }
+    }
+}
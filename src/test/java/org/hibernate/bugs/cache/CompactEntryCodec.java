@@ -0,0 +1,200 @@
+package org.hibernate.bugs.cache;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.entry.StandardCacheEntryImpl;
+import org.hibernate.bytecode.enhance.spi.LazyPropertyInitializer;
+import org.hibernate.property.access.internal.PropertyAccessStrategyBackRefImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary encoding of disassembled entity state: ids and other integral values as zigzag varints, short strings as
+ * {@link StringDictionary} indexes, Hibernate markers as single tags, and Java serialization for anything else.
+ */
+final class CompactEntryCodec {
+
+    private static final byte NULL = 0;
+    private static final byte UNFETCHED_PROPERTY = 1;
+    private static final byte UNKNOWN_BACK_REF = 2;
+    private static final byte TRUE = 3;
+    private static final byte FALSE = 4;
+    private static final byte LONG = 5;
+    private static final byte INTEGER = 6;
+    private static final byte STRING_REF = 7;
+    private static final byte STRING = 8;
+    private static final byte ENTITY_ENTRY = 9;
+    private static final byte SERIALIZED = 10;
+
+    private final StringDictionary dictionary;
+
+    CompactEntryCodec(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    byte[] encode(Object value) {
+        final Output out = new Output();
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    Object decode(ByteBuffer buffer) {
+        return read(buffer);
+    }
+
+    private void write(Output out, Object value) {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value == LazyPropertyInitializer.UNFETCHED_PROPERTY) {
+            out.write(UNFETCHED_PROPERTY);
+        } else if (value == PropertyAccessStrategyBackRefImpl.UNKNOWN) {
+            out.write(UNKNOWN_BACK_REF);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            out.writeVarLong(zigzag((Long) value));
+        } else if (value instanceof Integer) {
+            out.write(INTEGER);
+            out.writeVarLong(zigzag((Integer) value));
+        } else if (value instanceof String) {
+            writeString(out, (String) value);
+        } else if (value.getClass() == StandardCacheEntryImpl.class) {
+            final StandardCacheEntryImpl entry = (StandardCacheEntryImpl) value;
+            out.write(ENTITY_ENTRY);
+            writeString(out, entry.getSubclass());
+            write(out, entry.getVersion());
+            final Serializable[] state = entry.getDisassembledState();
+            out.writeVarLong(state.length);
+            for (Serializable element : state) {
+                write(out, element);
+            }
+        } else {
+            out.write(SERIALIZED);
+            final byte[] bytes = serialize(value);
+            out.writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private void writeString(Output out, String value) {
+        final int index = dictionary.indexOf(value);
+        if (index >= 0) {
+            out.write(STRING_REF);
+            out.writeVarLong(index);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.write(STRING);
+            out.writeVarLong(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private Object read(ByteBuffer in) {
+        final byte tag = in.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case UNFETCHED_PROPERTY:
+                return LazyPropertyInitializer.UNFETCHED_PROPERTY;
+            case UNKNOWN_BACK_REF:
+                return PropertyAccessStrategyBackRefImpl.UNKNOWN;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case LONG:
+                return unzigzag(readVarLong(in));
+            case INTEGER:
+                return (int) unzigzag(readVarLong(in));
+            case STRING_REF:
+            case STRING:
+                return readString(in, tag);
+            case ENTITY_ENTRY: {
+                final String subclass = readString(in, in.get());
+                final Object version = read(in);
+                final Serializable[] state = new Serializable[(int) readVarLong(in)];
+                for (int i = 0; i < state.length; i++) {
+                    state[i] = (Serializable) read(in);
+                }
+                return new StandardCacheEntryImpl(state, Arrays.toString(state), subclass, version);
+            }
+            case SERIALIZED: {
+                final byte[] bytes = new byte[(int) readVarLong(in)];
+                in.get(bytes);
+                return deserialize(bytes);
+            }
+            default:
+                throw new CacheException("Unknown tag " + tag + " in off-heap cache entry");
+        }
+    }
+
+    private String readString(ByteBuffer in, byte tag) {
+        if (tag == STRING_REF) {
+            return dictionary.valueAt((int) readVarLong(in));
+        }
+        final byte[] bytes = new byte[(int) readVarLong(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static byte[] serialize(Object value) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new CacheException("Unable to serialize " + value.getClass().getName() + " to the off-heap cache", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new CacheException("Unable to deserialize an off-heap cache entry", e);
+        }
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        private Output() {
+            super(64);
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+}
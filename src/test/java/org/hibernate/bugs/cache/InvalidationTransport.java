@@ -0,0 +1,18 @@
+package org.hibernate.bugs.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link Invalidations} between the nodes sharing a database.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Sends the batch to every subscriber, the publishing node included: receivers skip their own batches.
+     */
+    void publish(Invalidations invalidations);
+
+    void subscribe(Consumer<Invalidations> subscriber);
+
+    void unsubscribe(Consumer<Invalidations> subscriber);
+}
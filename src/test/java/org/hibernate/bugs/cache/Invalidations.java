@@ -0,0 +1,70 @@
+package org.hibernate.bugs.cache;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The cache entries and query spaces one transaction made stale, coalesced: an entity updated ten times is listed
+ * once.
+ */
+public class Invalidations implements Serializable {
+
+    private final String origin;
+    private final Map<String, Set<Serializable>> entities = new HashMap<>();
+    private final Map<String, Set<Serializable>> collections = new HashMap<>();
+    private final Set<String> querySpaces = new LinkedHashSet<>();
+
+    public Invalidations(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * @return the id of the node whose transaction produced these invalidations
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void addEntity(String entityName, Serializable id) {
+        entities.computeIfAbsent(entityName, k -> new LinkedHashSet<>()).add(id);
+    }
+
+    public void addCollection(String role, Serializable ownerId) {
+        collections.computeIfAbsent(role, k -> new LinkedHashSet<>()).add(ownerId);
+    }
+
+    /**
+     * Adds the tables whose cached query results are stale.
+     */
+    public void addQuerySpaces(Serializable[] spaces) {
+        for (Serializable space : spaces) {
+            querySpaces.add((String) space);
+        }
+    }
+
+    public Map<String, Set<Serializable>> getEntities() {
+        return Collections.unmodifiableMap(entities);
+    }
+
+    public Map<String, Set<Serializable>> getCollections() {
+        return Collections.unmodifiableMap(collections);
+    }
+
+    public Set<String> getQuerySpaces() {
+        return Collections.unmodifiableSet(querySpaces);
+    }
+
+    public boolean isEmpty() {
+        return entities.isEmpty() && collections.isEmpty() && querySpaces.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "Invalidations[origin=" + origin + ", entities=" + entities + ", collections=" + collections
+                + ", querySpaces=" + querySpaces + "]";
+    }
+}
@@ -0,0 +1,30 @@
+package org.hibernate.bugs.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-JVM stand-in for a network transport: batches are delivered synchronously to the nodes of the same JVM.
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport {
+
+    private final List<Consumer<Invalidations>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(Invalidations invalidations) {
+        for (Consumer<Invalidations> subscriber : subscribers) {
+            subscriber.accept(invalidations);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Invalidations> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public void unsubscribe(Consumer<Invalidations> subscriber) {
+        subscribers.remove(subscriber);
+    }
+}
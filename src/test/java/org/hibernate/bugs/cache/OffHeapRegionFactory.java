@@ -0,0 +1,74 @@
+package org.hibernate.bugs.cache;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.testing.cache.MapStorageAccessImpl;
+
+import java.util.Map;
+
+/**
+ * Alternative to {@code CachingRegionFactory} keeping entity and collection regions off-heap, see
+ * {@link OffHeapStorageAccess}. Query results and timestamps are small and short-lived: they stay on the heap.
+ * <p>
+ * Entries are stored disassembled, so the default access type is {@link AccessType#NONSTRICT_READ_WRITE}: the
+ * read-write strategy would wrap them in lock items.
+ */
+public class OffHeapRegionFactory extends RegionFactoryTemplate {
+
+    /**
+     * Off-heap bytes of each entity or collection region: every region has its own arena, so the cache as a whole
+     * can take up to this many bytes per region.
+     */
+    public static final String MAX_BYTES = "hibernate.bugs.cache.offheap.max_bytes";
+    public static final String DICTIONARY_CAPACITY = "hibernate.bugs.cache.offheap.dictionary_capacity";
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_DICTIONARY_CAPACITY = 4096;
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private int dictionaryCapacity = DEFAULT_DICTIONARY_CAPACITY;
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map configValues) {
+        maxBytes = ConfigurationHelper.getLong(MAX_BYTES, configValues, DEFAULT_MAX_BYTES);
+        dictionaryCapacity = ConfigurationHelper.getInt(DICTIONARY_CAPACITY, configValues, DEFAULT_DICTIONARY_CAPACITY);
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        // the buffers are released with the regions
+    }
+
+    @Override
+    public AccessType getDefaultAccessType() {
+        return AccessType.NONSTRICT_READ_WRITE;
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(
+            DomainDataRegionConfig regionConfig,
+            DomainDataRegionBuildingContext buildingContext) {
+        return new OffHeapStorageAccess(maxBytes, dictionaryCapacity);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(
+            String regionName,
+            SessionFactoryImplementor sessionFactory) {
+        return new MapStorageAccessImpl();
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(
+            String regionName,
+            SessionFactoryImplementor sessionFactory) {
+        return new MapStorageAccessImpl();
+    }
+}
@@ -0,0 +1,257 @@
+package org.hibernate.bugs.cache;
+
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Entity and collection data kept in a {@link SlabArena}, out of the reach of the garbage collector: only the keys
+ * and a small slot per entry stay on the heap.
+ * <p>
+ * Reads are a map lookup, a copy of the block and a decode, under an optimistic read of a {@link StampedLock}: a
+ * copy overlapping a write, which may have freed and reused the block, is retried under the read lock. Writes are
+ * serialized. When a block of the needed size class cannot be
+ * allocated, writers evict an approximation of the least recently used entry, picked by sampling a few slots of the
+ * dense arrays of live entries. An entry of the needed class frees its block, an entry of another class has its
+ * whole page emptied and reassigned to the needed class, so that the pages follow the sizes being cached.
+ */
+public class OffHeapStorageAccess implements DomainDataStorageAccess {
+
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final ConcurrentHashMap<Object, Slot> slots = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final CompactEntryCodec codec;
+    private final SlabArena arena;
+    private final LiveSlots[] live = new LiveSlots[SlabArena.CLASS_COUNT];
+    private final Slot[][] pageSlots;
+
+    public OffHeapStorageAccess(long maxBytes, int dictionaryCapacity) {
+        this.arena = new SlabArena(maxBytes);
+        this.pageSlots = new Slot[arena.pageCapacity()][];
+        this.codec = new CompactEntryCodec(new StringDictionary(dictionaryCapacity));
+        for (int i = 0; i < live.length; i++) {
+            live[i] = new LiveSlots();
+        }
+    }
+
+    @Override
+    public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+        long stamp = lock.tryOptimisticRead();
+        Slot slot = slots.get(key);
+        byte[] bytes = copy(slot);
+        if (!lock.validate(stamp)) {
+            // written meanwhile, the block may have been reused: the copy is not decoded
+            stamp = lock.readLock();
+            try {
+                slot = slots.get(key);
+                bytes = copy(slot);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (bytes == null) {
+            return null;
+        }
+        slot.lastAccess = clock.incrementAndGet();
+        return codec.decode(ByteBuffer.wrap(bytes));
+    }
+
+    private byte[] copy(Slot slot) {
+        if (slot == null) {
+            return null;
+        }
+        final byte[] bytes = new byte[slot.length];
+        arena.read(slot.address, bytes);
+        return bytes;
+    }
+
+    @Override
+    public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+        final byte[] bytes = codec.encode(value);
+        final int sizeClass = SlabArena.sizeClassOf(bytes.length);
+
+        final long stamp = lock.writeLock();
+        try {
+            free(slots.remove(key));
+            if (sizeClass < 0) {
+                // larger than a page: not cached
+                return;
+            }
+            long address;
+            while ((address = arena.allocate(sizeClass)) < 0L) {
+                if (!evictLeastRecentlyUsed(sizeClass)) {
+                    // no entry left to evict
+                    return;
+                }
+            }
+            arena.write(address, bytes);
+            final Slot slot = new Slot(key, address, bytes.length, sizeClass, clock.incrementAndGet());
+            live[sizeClass].add(slot);
+            slotsOf(SlabArena.page(address), sizeClass)[SlabArena.blockIndex(address, sizeClass)] = slot;
+            slots.put(key, slot);
+            usedBytes.addAndGet(SlabArena.blockSize(sizeClass));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // with the write lock held
+    private boolean evictLeastRecentlyUsed(int sizeClass) {
+        int liveCount = 0;
+        for (LiveSlots candidates : live) {
+            liveCount += candidates.size;
+        }
+        if (liveCount == 0) {
+            return false;
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        Slot oldest = null;
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            int index = random.nextInt(liveCount);
+            int candidateClass = 0;
+            while (index >= live[candidateClass].size) {
+                index -= live[candidateClass].size;
+                candidateClass++;
+            }
+            final Slot sampled = live[candidateClass].slots[index];
+            if (oldest == null || sampled.lastAccess < oldest.lastAccess) {
+                oldest = sampled;
+            }
+        }
+        if (oldest.sizeClass == sizeClass) {
+            evict(oldest);
+        } else {
+            final int page = SlabArena.page(oldest.address);
+            for (Slot slot : pageSlots[page]) {
+                if (slot != null) {
+                    evict(slot);
+                }
+            }
+            arena.reassign(page, sizeClass);
+        }
+        return true;
+    }
+
+    private void evict(Slot slot) {
+        slots.remove(slot.key, slot);
+        free(slot);
+    }
+
+    private Slot[] slotsOf(int page, int sizeClass) {
+        Slot[] owners = pageSlots[page];
+        if (owners == null || owners.length != SlabArena.blocksPerPage(sizeClass)) {
+            // first block of the page since it was cut for this class
+            owners = pageSlots[page] = new Slot[SlabArena.blocksPerPage(sizeClass)];
+        }
+        return owners;
+    }
+
+    // with the write lock held
+    private void free(Slot slot) {
+        if (slot == null) {
+            return;
+        }
+        live[slot.sizeClass].remove(slot);
+        pageSlots[SlabArena.page(slot.address)][SlabArena.blockIndex(slot.address, slot.sizeClass)] = null;
+        arena.free(slot.address, slot.sizeClass);
+        usedBytes.addAndGet(-SlabArena.blockSize(slot.sizeClass));
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return slots.containsKey(key);
+    }
+
+    @Override
+    public void evictData() {
+        final long stamp = lock.writeLock();
+        try {
+            for (LiveSlots candidates : live) {
+                while (candidates.size > 0) {
+                    evict(candidates.slots[candidates.size - 1]);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void evictData(Object key) {
+        final long stamp = lock.writeLock();
+        try {
+            free(slots.remove(key));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void release() {
+        evictData();
+    }
+
+    /**
+     * @return the bytes held by the blocks of the live entries
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public int getEntryCount() {
+        return slots.size();
+    }
+
+    private static final class Slot {
+
+        private final Object key;
+        private final long address;
+        private final int length;
+        private final int sizeClass;
+        private int position;
+        private volatile long lastAccess;
+
+        private Slot(Object key, long address, int length, int sizeClass, long lastAccess) {
+            this.key = key;
+            this.address = address;
+            this.length = length;
+            this.sizeClass = sizeClass;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Dense array of the live entries of a size class, for sampling in constant time: removal moves the last slot
+     * into the hole.
+     */
+    private static final class LiveSlots {
+
+        private Slot[] slots = new Slot[16];
+        private int size;
+
+        private void add(Slot slot) {
+            if (size == slots.length) {
+                final Slot[] grown = new Slot[size * 2];
+                System.arraycopy(slots, 0, grown, 0, size);
+                slots = grown;
+            }
+            slot.position = size;
+            slots[size++] = slot;
+        }
+
+        private void remove(Slot slot) {
+            final Slot last = slots[--size];
+            slots[slot.position] = last;
+            last.position = slot.position;
+            slots[size] = null;
+        }
+    }
+}
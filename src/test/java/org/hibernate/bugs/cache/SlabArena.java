@@ -0,0 +1,170 @@
+package org.hibernate.bugs.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Off-heap memory carved out of a few large direct slabs, instead of one direct buffer per entry: each slab is cut
+ * into pages, and each page into blocks of a single power-of-two size class, the way memcached does. Freed blocks
+ * go back to the free list of their class and are reused as is, so native memory is never handed back to the
+ * garbage collector until the arena is dropped. Once all the blocks of a page are free, the page can be
+ * {@link #reassign(int, int) reassigned} to another class, for the pages not to stay with the classes that filled
+ * the arena first.
+ * <p>
+ * Not thread-safe for allocation: callers hold their own lock. {@link #read(long, byte[])} can be called
+ * concurrently with allocations, pages never move once created.
+ */
+final class SlabArena {
+
+    static final int MIN_BLOCK_SIZE = 64;
+    static final int PAGE_SIZE = 64 * 1024;
+    static final int CLASS_COUNT = Integer.numberOfTrailingZeros(PAGE_SIZE / MIN_BLOCK_SIZE) + 1;
+
+    private static final int PAGES_PER_SLAB = 64;
+
+    private final AtomicReferenceArray<ByteBuffer> pages;
+    private final int[] pageClasses;
+    private final LongStack[] freeBlocks = new LongStack[CLASS_COUNT];
+    private int pageCount;
+    private ByteBuffer slab;
+
+    SlabArena(long maxBytes) {
+        this.pages = new AtomicReferenceArray<>((int) Math.max(1L, maxBytes / PAGE_SIZE));
+        this.pageClasses = new int[pages.length()];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            freeBlocks[i] = new LongStack();
+        }
+    }
+
+    /**
+     * @return the size class of a block holding {@code length} bytes, or -1 when larger than a page
+     */
+    static int sizeClassOf(int length) {
+        if (length > PAGE_SIZE) {
+            return -1;
+        }
+        final int blocks = (Math.max(length, MIN_BLOCK_SIZE) + MIN_BLOCK_SIZE - 1) / MIN_BLOCK_SIZE;
+        return 32 - Integer.numberOfLeadingZeros(blocks - 1);
+    }
+
+    static int blockSize(int sizeClass) {
+        return MIN_BLOCK_SIZE << sizeClass;
+    }
+
+    static int blocksPerPage(int sizeClass) {
+        return PAGE_SIZE / blockSize(sizeClass);
+    }
+
+    static int page(long address) {
+        return (int) (address >>> 32);
+    }
+
+    static int blockIndex(long address, int sizeClass) {
+        return offset(address) / blockSize(sizeClass);
+    }
+
+    int pageCapacity() {
+        return pages.length();
+    }
+
+    /**
+     * @return the address of a free block of the given class, or -1 when the arena is full for that class: an
+     * entry of the same class has to be freed first, or a page reassigned to that class
+     */
+    long allocate(int sizeClass) {
+        final LongStack free = freeBlocks[sizeClass];
+        if (free.isEmpty()) {
+            final int page = addPage();
+            if (page < 0) {
+                return -1L;
+            }
+            carve(page, sizeClass);
+        }
+        return free.pop();
+    }
+
+    void free(long address, int sizeClass) {
+        freeBlocks[sizeClass].push(address);
+    }
+
+    /**
+     * Cuts a page into blocks of another size class: all the blocks of the page must have been freed.
+     */
+    void reassign(int page, int sizeClass) {
+        freeBlocks[pageClasses[page]].removePage(page);
+        carve(page, sizeClass);
+    }
+
+    void write(long address, byte[] bytes) {
+        final ByteBuffer page = pages.get(page(address)).duplicate();
+        page.position(offset(address));
+        page.put(bytes);
+    }
+
+    void read(long address, byte[] bytes) {
+        final ByteBuffer page = pages.get(page(address)).duplicate();
+        page.position(offset(address));
+        page.get(bytes);
+    }
+
+    private int addPage() {
+        if (pageCount == pages.length()) {
+            return -1;
+        }
+        final int pageInSlab = pageCount % PAGES_PER_SLAB;
+        if (pageInSlab == 0) {
+            final int slabPages = Math.min(PAGES_PER_SLAB, pages.length() - pageCount);
+            slab = ByteBuffer.allocateDirect(slabPages * PAGE_SIZE);
+        }
+        final ByteBuffer page = slab.duplicate();
+        page.position(pageInSlab * PAGE_SIZE).limit((pageInSlab + 1) * PAGE_SIZE);
+        final int index = pageCount++;
+        pages.set(index, page.slice());
+        return index;
+    }
+
+    private void carve(int page, int sizeClass) {
+        pageClasses[page] = sizeClass;
+        final int blockSize = blockSize(sizeClass);
+        for (int offset = PAGE_SIZE - blockSize; offset >= 0; offset -= blockSize) {
+            freeBlocks[sizeClass].push(((long) page << 32) | offset);
+        }
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static final class LongStack {
+
+        private long[] values = new long[16];
+        private int size;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void push(long value) {
+            if (size == values.length) {
+                final long[] grown = new long[size * 2];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+
+        private long pop() {
+            return values[--size];
+        }
+
+        private void removePage(int page) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (page(values[i]) != page) {
+                    values[kept++] = values[i];
+                }
+            }
+            size = kept;
+        }
+    }
+}
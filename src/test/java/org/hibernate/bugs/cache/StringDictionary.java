@@ -0,0 +1,68 @@
+package org.hibernate.bugs.cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, append-only dictionary of the short strings repeated across cache entries (names, subclass names...),
+ * so that each occurrence is encoded as a small index. A string is only admitted the second time it is seen, so
+ * that unique values (logins...) do not fill the dictionary: candidates seen once are remembered in a bounded set,
+ * dropped as a whole when full. Lookups never lock; strings not admitted are inlined by the caller.
+ */
+final class StringDictionary {
+
+    static final int MAX_LENGTH = 64;
+
+    private final ConcurrentMap<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> values;
+    private final Set<String> seenOnce = ConcurrentHashMap.newKeySet();
+    private final int maxCandidates;
+
+    StringDictionary(int capacity) {
+        this.values = new AtomicReferenceArray<>(capacity);
+        this.maxCandidates = capacity * 4;
+    }
+
+    /**
+     * @return the index of the string, or -1 when it is too long, not seen before, or the dictionary is full
+     */
+    int indexOf(String value) {
+        if (value.length() > MAX_LENGTH) {
+            return -1;
+        }
+        final Integer index = indexes.get(value);
+        if (index != null) {
+            return index;
+        }
+        if (indexes.size() >= values.length()) {
+            return -1;
+        }
+        if (seenOnce.add(value)) {
+            if (seenOnce.size() > maxCandidates) {
+                seenOnce.clear();
+            }
+            return -1;
+        }
+        synchronized (indexes) {
+            final Integer existing = indexes.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            final int next = indexes.size();
+            if (next >= values.length()) {
+                return -1;
+            }
+            // published before the index, so that readers decoding it always find the value
+            values.set(next, value);
+            indexes.put(value, next);
+            seenOnce.remove(value);
+            return next;
+        }
+    }
+
+    String valueAt(int index) {
+        return values.get(index);
+    }
+}
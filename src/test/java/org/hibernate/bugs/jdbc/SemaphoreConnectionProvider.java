@@ -0,0 +1,181 @@
+package org.hibernate.bugs.jdbc;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool meant for thousands of short sessions running on virtual threads.
+ * <p>
+ * Unlike the built-in pool, no monitor is held while waiting: a fair {@link Semaphore} queues the callers in
+ * arrival order, gives up after {@link #ACQUISITION_TIMEOUT} milliseconds, and idle connections sit in a
+ * lock-free queue. Connections are opened lazily, up to {@code hibernate.connection.pool_size}.
+ * <p>
+ * When {@link #STATEMENT_CACHE_SIZE} is positive, each connection keeps an LRU cache of its prepared statements,
+ * see {@link #getStatementCacheStatistics()}.
+ */
+public class SemaphoreConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    public static final String ACQUISITION_TIMEOUT = "hibernate.bugs.connection.acquisition_timeout";
+    public static final String STATEMENT_CACHE_SIZE = "hibernate.bugs.connection.statement_cache_size";
+
+    private static final int DEFAULT_POOL_SIZE = 20;
+    private static final long DEFAULT_ACQUISITION_TIMEOUT = 30_000L;
+
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private final StatementCacheStatistics statementCacheStatistics = new StatementCacheStatistics();
+
+    private String url;
+    private Properties connectionProperties;
+    private Semaphore permits;
+    private long acquisitionTimeout;
+    private int statementCacheSize;
+    private volatile boolean stopped = false;
+
+    @Override
+    public void configure(Map configurationValues) {
+        url = ConfigurationHelper.getString(AvailableSettings.URL, configurationValues);
+        if (url == null) {
+            throw new HibernateException(AvailableSettings.URL + " is required");
+        }
+        final String driverClass = ConfigurationHelper.getString(AvailableSettings.DRIVER, configurationValues);
+        if (driverClass != null) {
+            try {
+                Class.forName(driverClass);
+            } catch (ClassNotFoundException e) {
+                throw new HibernateException("Unable to load JDBC driver " + driverClass, e);
+            }
+        }
+
+        connectionProperties = new Properties();
+        final String user = ConfigurationHelper.getString(AvailableSettings.USER, configurationValues);
+        if (user != null) {
+            connectionProperties.setProperty("user", user);
+        }
+        final String password = ConfigurationHelper.getString(AvailableSettings.PASS, configurationValues);
+        if (password != null) {
+            connectionProperties.setProperty("password", password);
+        }
+
+        final int poolSize = ConfigurationHelper.getInt(AvailableSettings.POOL_SIZE, configurationValues, DEFAULT_POOL_SIZE);
+        permits = new Semaphore(poolSize, true);
+        acquisitionTimeout = ConfigurationHelper.getLong(ACQUISITION_TIMEOUT, configurationValues, DEFAULT_ACQUISITION_TIMEOUT);
+        statementCacheSize = ConfigurationHelper.getInt(STATEMENT_CACHE_SIZE, configurationValues, 0);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (stopped) {
+            throw new SQLException("Connection provider is stopped");
+        }
+        try {
+            if (!permits.tryAcquire(acquisitionTimeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("No connection available after " + acquisitionTimeout + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            Connection connection = idle.poll();
+            if (connection == null) {
+                connection = DriverManager.getConnection(url, connectionProperties);
+                if (statementCacheSize > 0) {
+                    connection = StatementCachingConnection.wrap(connection, statementCacheSize, statementCacheStatistics);
+                }
+            }
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        try {
+            if (stopped || connection.isClosed()) {
+                StatementCachingConnection.closePhysically(connection);
+            } else {
+                try {
+                    if (!connection.getAutoCommit()) {
+                        // switching to auto-commit would commit what the session left open
+                        connection.rollback();
+                        connection.setAutoCommit(true);
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    // not reusable in an unknown state, and not to be leaked either
+                    try {
+                        StatementCachingConnection.closePhysically(connection);
+                    } catch (SQLException | RuntimeException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw e;
+                }
+                idle.offer(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return the number of callers currently waiting for a connection
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    public StatementCacheStatistics getStatementCacheStatistics() {
+        return statementCacheStatistics;
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || SemaphoreConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            try {
+                StatementCachingConnection.closePhysically(connection);
+            } catch (SQLException ignored) {
+                // closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.hibernate.bugs.jdbc;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reuse counters of the prepared statement caches of one {@link SemaphoreConnectionProvider}.
+ */
+public class StatementCacheStatistics {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    void hit() {
+        hits.increment();
+    }
+
+    void miss() {
+        misses.increment();
+    }
+
+    void eviction() {
+        evictions.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the share of {@code prepareStatement} calls served from a cache, between 0 and 1
+     */
+    public double getReuseRatio() {
+        final long hitCount = getHitCount();
+        final long total = hitCount + getMissCount();
+        return total == 0 ? 0d : (double) hitCount / total;
+    }
+
+    public void clear() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCacheStatistics[hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount()
+                + ", reuseRatio=" + getReuseRatio() + "]";
+    }
+}
@@ -0,0 +1,185 @@
+package org.hibernate.bugs.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the last {@code cacheSize} statements prepared with {@link Connection#prepareStatement(String)} open, so
+ * the tiny statements issued on every lazy-group initialization reuse their server-side plan.
+ * <p>
+ * Closing a cached statement returns it to the cache; closing the connection itself is left to the pool, which
+ * calls {@link #closePhysically(Connection)}. A connection is used by one session at a time, hence no locking.
+ */
+final class StatementCachingConnection implements InvocationHandler {
+
+    private final Connection connection;
+    private final StatementCacheStatistics statistics;
+    private final Map<String, CachedStatement> cache;
+    private Connection proxy;
+
+    private StatementCachingConnection(Connection connection, int cacheSize, StatementCacheStatistics statistics) {
+        this.connection = connection;
+        this.statistics = statistics;
+        this.cache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= cacheSize) {
+                    return false;
+                }
+                eldest.getValue().evict();
+                StatementCachingConnection.this.statistics.eviction();
+                return true;
+            }
+        };
+    }
+
+    static Connection wrap(Connection connection, int cacheSize, StatementCacheStatistics statistics) {
+        final StatementCachingConnection handler = new StatementCachingConnection(connection, cacheSize, statistics);
+        handler.proxy = (Connection) Proxy.newProxyInstance(
+                StatementCachingConnection.class.getClassLoader(),
+                new Class[]{Connection.class},
+                handler);
+        return handler.proxy;
+    }
+
+    /**
+     * Closes the cached statements and the underlying connection, whether {@code connection} is wrapped or not.
+     */
+    static void closePhysically(Connection connection) throws SQLException {
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof StatementCachingConnection) {
+            final StatementCachingConnection handler = (StatementCachingConnection) Proxy.getInvocationHandler(connection);
+            final Iterator<CachedStatement> it = handler.cache.values().iterator();
+            while (it.hasNext()) {
+                it.next().evict();
+                it.remove();
+            }
+            handler.connection.close();
+        } else {
+            connection.close();
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "prepareStatement":
+                if (args.length == 1) {
+                    return prepareStatement((String) args[0]);
+                }
+                break;
+            default:
+                break;
+        }
+        return invokeOn(connection, method, args);
+    }
+
+    private PreparedStatement prepareStatement(String sql) throws SQLException {
+        CachedStatement cached = cache.get(sql);
+        if (cached != null && !cached.inUse) {
+            statistics.hit();
+        } else {
+            statistics.miss();
+            final CachedStatement prepared = new CachedStatement(connection.prepareStatement(sql));
+            if (cached == null) {
+                cache.put(sql, prepared);
+            } else {
+                // same shape open twice, the second one is not cached
+                prepared.evicted = true;
+            }
+            cached = prepared;
+        }
+        cached.inUse = true;
+        return cached.proxy;
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class CachedStatement implements InvocationHandler {
+
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        private CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    StatementCachingConnection.class.getClassLoader(),
+                    new Class[]{PreparedStatement.class},
+                    this);
+        }
+
+        private void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // statement is discarded anyway
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "getConnection":
+                    return StatementCachingConnection.this.proxy;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "close":
+                    release();
+                    return null;
+                default:
+                    return invokeOn(statement, method, args);
+            }
+        }
+
+        private void release() throws SQLException {
+            if (!inUse) {
+                return;
+            }
+            inUse = false;
+            if (evicted) {
+                statement.close();
+                return;
+            }
+            // settings Hibernate may have applied for the previous query
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.setMaxRows(0);
+            statement.setQueryTimeout(0);
+            statement.setFetchSize(0);
+            statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+            statement.clearWarnings();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.hibernate.bugs.jmh;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.test.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getter throughput of enhanced entities whose lazy attributes are initialized, each getter going through
+ * Hibernate's interceptor.
+ * <p>
+ * The benchmark forks a JVM with the class path of the launching one, so run it in a JVM of its own, entities being
+ * enhanced: {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * "-Dexec.args=-cp %classpath org.hibernate.bugs.jmh.EnhancedGetterBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnhancedGetterBenchmark {
+
+    private SessionFactory sessionFactory;
+    private Session session;
+    private MessageWithLazyToOne message;
+    private Practitioner practitioner;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(MessageWithLazyToOne.class)
+                .addAnnotatedClass(MessageWithoutLazyToOne.class)
+                .addAnnotatedClass(Patient.class)
+                .addAnnotatedClass(Practitioner.class)
+                .addAnnotatedClass(User.class)
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.SHOW_SQL, Boolean.FALSE.toString())
+                .setProperty(AvailableSettings.LOG_SESSION_METRICS, Boolean.FALSE.toString())
+                .buildSessionFactory();
+
+        Session s = sessionFactory.openSession();
+        Transaction tx = s.beginTransaction();
+        Practitioner p = new Practitioner().setId(1L);
+        s.persist(p);
+        s.persist(new User().setLogin("login1").setName("John").setPractitioner(p));
+        Patient patient = new Patient().setId(1L).setName("Jane").addPractitioner(p);
+        s.persist(patient);
+        s.persist(new MessageWithLazyToOne().setId(1L).setPatient(patient).setPractitioner(p));
+        tx.commit();
+        s.close();
+
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+        message = session.find(MessageWithLazyToOne.class, 1L);
+        practitioner = message.getPractitioner();
+        practitioner.getUser();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.getTransaction().rollback();
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Object enhancedGetter() {
+        return message.getPractitioner();
+    }
+
+    @Benchmark
+    public Object enhancedGetterChain() {
+        return practitioner.getUser();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EnhancedGetterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,111 @@
+package org.hibernate.bugs.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Poor man's lock profiler: periodically samples the worker threads and counts, per lock and calling frame, how
+ * often they were found blocked or waiting on it. The calling frame is the first one outside the JDK: a thread
+ * parked on a {@code ReentrantLock} or a {@code ConcurrentHashMap} bin always has {@code Unsafe.park} on top.
+ * Frequent entries point at the metadata lookups or caches that stop scaling first.
+ */
+public class ContentionSampler implements Runnable {
+
+    private static final int MAX_DEPTH = 32;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Collection<Thread> workers;
+    private final long intervalMillis;
+    private final Map<String, LongAdder> hotSpots = new ConcurrentHashMap<>();
+    private final LongAdder blockedTime = new LongAdder();
+    private volatile boolean running = true;
+
+    public ContentionSampler(Collection<Thread> workers, long intervalMillis) {
+        this.workers = workers;
+        this.intervalMillis = intervalMillis;
+        if (threads.isThreadContentionMonitoringSupported()) {
+            threads.setThreadContentionMonitoringEnabled(true);
+        }
+    }
+
+    @Override
+    public void run() {
+        final long[] ids = workers.stream().mapToLong(Thread::getId).toArray();
+        while (running) {
+            for (ThreadInfo info : threads.getThreadInfo(ids, MAX_DEPTH)) {
+                if (info == null || info.getLockName() == null) {
+                    continue;
+                }
+                switch (info.getThreadState()) {
+                    case BLOCKED:
+                    case WAITING:
+                    case TIMED_WAITING:
+                        final String frame = callingFrame(info.getStackTrace());
+                        hotSpots.computeIfAbsent(info.getLockName() + " at " + frame, k -> new LongAdder()).increment();
+                        break;
+                    default:
+                        break;
+                }
+            }
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static String callingFrame(StackTraceElement[] stack) {
+        for (StackTraceElement element : stack) {
+            final String className = element.getClassName();
+            if (!className.startsWith("java.") && !className.startsWith("jdk.") && !className.startsWith("sun.")) {
+                return element.toString();
+            }
+        }
+        return stack.length == 0 ? "?" : stack[0].toString();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * To be called by each worker before it terminates, as dead threads cannot be inspected anymore.
+     */
+    public void recordCurrentThread() {
+        if (threads.isThreadContentionMonitoringEnabled()) {
+            final ThreadInfo info = threads.getThreadInfo(Thread.currentThread().getId());
+            if (info != null && info.getBlockedTime() > 0) {
+                blockedTime.add(info.getBlockedTime());
+            }
+        }
+    }
+
+    /**
+     * @return total time, in milliseconds, the workers spent blocked entering a monitor, or -1 when unsupported
+     */
+    public long blockedTimeMillis() {
+        return threads.isThreadContentionMonitoringEnabled() ? blockedTime.sum() : -1L;
+    }
+
+    /**
+     * @return the {@code limit} most sampled "lock at frame" entries, with their sample count
+     */
+    public List<String> topHotSpots(int limit) {
+        return hotSpots.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+                .limit(limit)
+                .map(e -> e.getValue().sum() + " x " + e.getKey())
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+}
@@ -0,0 +1,49 @@
+package org.hibernate.bugs.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Growable array of latencies in nanoseconds. Not thread safe: each worker records its own samples, which are
+ * {@link #merge(LatencySamples) merged} once the workers are done.
+ */
+public class LatencySamples {
+
+    private long[] values = new long[1024];
+    private int size = 0;
+    private boolean sorted = true;
+
+    public void record(long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+        sorted = false;
+    }
+
+    public void merge(LatencySamples other) {
+        for (int i = 0; i < other.size; i++) {
+            record(other.values[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency in microseconds under which {@code percentile}% of the samples fall
+     */
+    public long percentileMicros(double percentile) {
+        if (size == 0) {
+            return 0L;
+        }
+        if (!sorted) {
+            Arrays.sort(values, 0, size);
+            sorted = true;
+        }
+        final int index = (int) Math.ceil(percentile / 100d * size) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(values[Math.max(0, Math.min(index, size - 1))]);
+    }
+}
@@ -0,0 +1,26 @@
+package org.hibernate.bugs.load;
+
+import org.junit.Assume;
+
+/**
+ * Load tests and benchmarks are skipped unless run with {@code -Dhhh13134.load=true}, so that the reproducers stay
+ * fast.
+ */
+public final class LoadTests {
+
+    public static final String ENABLED = "hhh13134.load";
+
+    private LoadTests() {
+    }
+
+    public static boolean enabled() {
+        return Boolean.getBoolean(ENABLED);
+    }
+
+    /**
+     * Skips the calling test, or every test when called from a {@code @Before} method, unless load tests are enabled.
+     */
+    public static void assumeEnabled() {
+        Assume.assumeTrue("load test, run with -D" + ENABLED + "=true", enabled());
+    }
+}
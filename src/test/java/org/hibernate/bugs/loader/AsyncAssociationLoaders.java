@@ -0,0 +1,55 @@
+package org.hibernate.bugs.loader;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.test.User;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking alternatives to the enhanced getters of {@code @LazyToOne(NO_PROXY)} associations.
+ * <p>
+ * Each loader resolves its batch in a short-lived session of its own: the returned entities are detached.
+ */
+public final class AsyncAssociationLoaders {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private AsyncAssociationLoaders() {
+    }
+
+    /**
+     * {@code Practitioner.user}, keyed by practitioner id.
+     */
+    public static BatchingLoader<Long, User> practitionerUser(SessionFactory sessionFactory, Executor executor) {
+        return new BatchingLoader<>(ids -> {
+            final Map<Long, User> users = new HashMap<>();
+            Session s = sessionFactory.openSession();
+            Transaction tx = s.beginTransaction();
+            try {
+                final List<Object[]> rows = s.createQuery(
+                        "SELECT p.id, u " +
+                                "FROM Practitioner p " +
+                                "JOIN p.user u " +
+                                "WHERE p.id IN (:ids)",
+                        Object[].class)
+                        .setParameterList("ids", ids)
+                        .list();
+                for (Object[] row : rows) {
+                    users.put((Long) row[0], (User) row[1]);
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                tx.rollback();
+                throw e;
+            } finally {
+                s.close();
+            }
+            return users;
+        }, executor, DEFAULT_BATCH_SIZE);
+    }
+}
@@ -0,0 +1,160 @@
+package org.hibernate.bugs.loader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Groups concurrent requests for the same kind of value into one batch, resolved on an {@link Executor}.
+ * <p>
+ * Keys requested while a batch is running are queued and resolved by the next one, so the callers overlap
+ * the database latency instead of serializing it. A {@link ReentrantLock} guards the queue rather than a
+ * monitor, so virtual threads are not pinned while waiting for it.
+ */
+public class BatchingLoader<K, V> {
+
+    private final Function<Set<K>, Map<K, V>> batchFunction;
+    private final Executor executor;
+    private final int maxBatchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private boolean drainScheduled = false;
+
+    public BatchingLoader(Function<Set<K>, Map<K, V>> batchFunction, Executor executor, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        }
+        this.batchFunction = batchFunction;
+        this.executor = executor;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @return a stage completed with the value for the key, or {@code null} when the batch did not return it
+     */
+    public CompletionStage<V> load(K key) {
+        final CompletableFuture<V> future;
+        final boolean scheduleDrain;
+        lock.lock();
+        try {
+            CompletableFuture<V> existing = pending.get(key);
+            if (existing == null) {
+                existing = new CompletableFuture<>();
+                pending.put(key, existing);
+            }
+            future = existing;
+            scheduleDrain = !drainScheduled;
+            drainScheduled = true;
+        } finally {
+            lock.unlock();
+        }
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+        return future;
+    }
+
+    /**
+     * Queues all the keys at once, so that they share a batch as long as they fit in one.
+     *
+     * @return the stages of the keys, in the same order
+     */
+    public List<CompletionStage<V>> loadAll(Collection<K> keys) {
+        final List<CompletionStage<V>> futures = new ArrayList<>(keys.size());
+        final boolean scheduleDrain;
+        lock.lock();
+        try {
+            for (K key : keys) {
+                futures.add(pending.computeIfAbsent(key, k -> new CompletableFuture<>()));
+            }
+            scheduleDrain = !drainScheduled && !futures.isEmpty();
+            drainScheduled = drainScheduled || scheduleDrain;
+        } finally {
+            lock.unlock();
+        }
+        if (scheduleDrain) {
+            scheduleDrain();
+        }
+        return futures;
+    }
+
+    private void drain() {
+        final Map<K, CompletableFuture<V>> batch = new HashMap<>();
+        lock.lock();
+        try {
+            final Iterator<Map.Entry<K, CompletableFuture<V>>> it = pending.entrySet().iterator();
+            while (it.hasNext() && batch.size() < maxBatchSize) {
+                final Map.Entry<K, CompletableFuture<V>> entry = it.next();
+                batch.put(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            resolve(batch);
+        } finally {
+            // keys requested while the batch was running wait for the next one
+            final boolean scheduleDrain;
+            lock.lock();
+            try {
+                scheduleDrain = !pending.isEmpty();
+                drainScheduled = scheduleDrain;
+            } finally {
+                lock.unlock();
+            }
+            if (scheduleDrain) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (Throwable e) {
+            // rejected, by a shut down executor for instance: no drain is coming, the queued keys fail instead of
+            // waiting forever, and the next load schedules a drain again
+            final List<CompletableFuture<V>> rejected;
+            lock.lock();
+            try {
+                rejected = new ArrayList<>(pending.values());
+                pending.clear();
+                drainScheduled = false;
+            } finally {
+                lock.unlock();
+            }
+            for (CompletableFuture<V> future : rejected) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void resolve(Map<K, CompletableFuture<V>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            final Map<K, V> values = batchFunction.apply(batch.keySet());
+            for (Map.Entry<K, CompletableFuture<V>> entry : batch.entrySet()) {
+                entry.getValue().complete(values.get(entry.getKey()));
+            }
+        } catch (Throwable e) {
+            for (CompletableFuture<V> future : batch.values()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.hibernate.bugs.loader;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded alternative to {@code hibernate.enable_lazy_load_no_trans} for references left uninitialized once their
+ * session is closed.
+ * <p>
+ * Instead of a session and a connection per lazy access, detached loads go through a shared pool of at most
+ * {@code maxConcurrency} read-only sessions, and concurrent loads of the same entity type are batched into one
+ * query. Initialized proxies are usable by their holders as if they had been loaded in their own session.
+ */
+public class DetachedEntityLoader implements AutoCloseable {
+
+    private final SessionFactory sessionFactory;
+    private final ExecutorService executor;
+    private final int maxBatchSize;
+    private final ConcurrentMap<String, BatchingLoader<Serializable, Object>> loaders = new ConcurrentHashMap<>();
+
+    public DetachedEntityLoader(SessionFactory sessionFactory, int maxConcurrency, int maxBatchSize) {
+        this.sessionFactory = sessionFactory;
+        this.executor = Executors.newFixedThreadPool(maxConcurrency);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletionStage<T> load(Class<T> entityClass, Serializable id) {
+        return (CompletionStage<T>) loaderFor(entityClass.getName()).load(id);
+    }
+
+    /**
+     * Initializes the given detached references, batching those of the same entity type, and waits for them.
+     * References already initialized are left untouched.
+     */
+    public void initializeAll(Collection<?> references) {
+        final Map<String, List<LazyInitializer>> uninitialized = new HashMap<>();
+        for (Object reference : references) {
+            if (reference instanceof HibernateProxy && !Hibernate.isInitialized(reference)) {
+                final LazyInitializer initializer = ((HibernateProxy) reference).getHibernateLazyInitializer();
+                uninitialized.computeIfAbsent(initializer.getEntityName(), k -> new ArrayList<>()).add(initializer);
+            }
+        }
+
+        final List<CompletionStage<Void>> done = new ArrayList<>();
+        for (Map.Entry<String, List<LazyInitializer>> entry : uninitialized.entrySet()) {
+            final List<Serializable> ids = new ArrayList<>();
+            for (LazyInitializer initializer : entry.getValue()) {
+                ids.add(initializer.getIdentifier());
+            }
+            final List<CompletionStage<Object>> loads = loaderFor(entry.getKey()).loadAll(ids);
+            for (int i = 0; i < loads.size(); i++) {
+                final LazyInitializer initializer = entry.getValue().get(i);
+                done.add(loads.get(i).thenAccept(initializer::setImplementation));
+            }
+        }
+
+        try {
+            for (CompletionStage<Void> stage : done) {
+                stage.toCompletableFuture().join();
+            }
+        } catch (CompletionException e) {
+            throw new HibernateException("Unable to initialize detached references", e.getCause());
+        }
+    }
+
+    private BatchingLoader<Serializable, Object> loaderFor(String entityName) {
+        return loaders.computeIfAbsent(entityName, name -> new BatchingLoader<>(ids -> {
+            final Map<Serializable, Object> entities = new HashMap<>();
+            Session s = sessionFactory.openSession();
+            s.setDefaultReadOnly(true);
+            s.setHibernateFlushMode(FlushMode.MANUAL);
+            Transaction tx = s.beginTransaction();
+            try {
+                for (Object entity : s.byMultipleIds(name).multiLoad(new ArrayList<>(ids))) {
+                    if (entity != null) {
+                        entities.put(s.getIdentifier(entity), entity);
+                    }
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                tx.rollback();
+                throw e;
+            } finally {
+                s.close();
+            }
+            return entities;
+        }, executor, maxBatchSize));
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+}
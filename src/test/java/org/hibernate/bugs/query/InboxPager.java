@@ -0,0 +1,60 @@
+package org.hibernate.bugs.query;
+
+import org.hibernate.Session;
+import org.hibernate.test.MessageWithoutLazyToOne;
+
+import java.util.List;
+
+/**
+ * Keyset pagination of the messages of a practitioner, ordered by id: each page seeks past the last id of the
+ * previous one ({@code WHERE id > :lastId ORDER BY id LIMIT n}), so that reading a page costs the same at any
+ * depth, where an offset would scan and skip all the rows before it.
+ * <p>
+ * Set {@code hibernate.default_batch_fetch_size} to at least the page size for the patients and practitioners of a
+ * page to be fetched in one batch.
+ */
+public class InboxPager {
+
+    private final int pageSize;
+
+    public InboxPager(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.pageSize = pageSize;
+    }
+
+    public KeysetPage<MessageWithoutLazyToOne> firstPage(Session session, Long practitionerId) {
+        return pageAfter(session, practitionerId, Long.MIN_VALUE);
+    }
+
+    public KeysetPage<MessageWithoutLazyToOne> nextPage(
+            Session session,
+            Long practitionerId,
+            KeysetPage<MessageWithoutLazyToOne> previous) {
+        if (!previous.hasNext()) {
+            throw new IllegalArgumentException("No page after the last one");
+        }
+        return pageAfter(session, practitionerId, previous.getLastId());
+    }
+
+    public KeysetPage<MessageWithoutLazyToOne> pageAfter(Session session, Long practitionerId, long lastId) {
+        final List<MessageWithoutLazyToOne> messages = session.createQuery(
+                "SELECT m " +
+                        "FROM MessageWithoutLazyToOne m " +
+                        "WHERE m.practitioner.id = :practitionerId " +
+                        "AND m.id > :lastId " +
+                        "ORDER BY m.id",
+                MessageWithoutLazyToOne.class)
+                .setParameter("practitionerId", practitionerId)
+                .setParameter("lastId", lastId)
+                // one more to know whether there is a next page
+                .setMaxResults(pageSize + 1)
+                .list();
+
+        final boolean hasNext = messages.size() > pageSize;
+        final List<MessageWithoutLazyToOne> items = hasNext ? messages.subList(0, pageSize) : messages;
+        final Long last = items.isEmpty() ? null : items.get(items.size() - 1).getId();
+        return new KeysetPage<>(items, last, hasNext);
+    }
+}
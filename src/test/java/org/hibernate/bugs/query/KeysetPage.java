@@ -0,0 +1,35 @@
+package org.hibernate.bugs.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset (seek) pagination: the next page starts after {@link #getLastId()}.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> items;
+    private final Long lastId;
+    private final boolean hasNext;
+
+    public KeysetPage(List<T> items, Long lastId, boolean hasNext) {
+        this.items = Collections.unmodifiableList(items);
+        this.lastId = lastId;
+        this.hasNext = hasNext;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the id of the last item, {@code null} for an empty page
+     */
+    public Long getLastId() {
+        return lastId;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+}
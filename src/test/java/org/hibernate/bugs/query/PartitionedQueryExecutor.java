@@ -0,0 +1,126 @@
+package org.hibernate.bugs.query;
+
+import org.hibernate.FlushMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Splits a query by id range and runs each partition in its own read-only session, hence on its own connection,
+ * in a {@link ForkJoinPool}, so that a report uses all the cores instead of one connection.
+ * <p>
+ * The query restricts the id of its root with the {@code :partitionFrom} (inclusive) and {@code :partitionTo}
+ * (exclusive) parameters. The entities are detached once their partition is read: whatever they need is
+ * initialized by the {@code initializer}, within the partition session, where
+ * {@code hibernate.default_batch_fetch_size} batches the references of the partition. Only proxied references are
+ * batched: a {@code NO_PROXY} to-one needs enhancement as proxy, or a {@code JOIN FETCH} in the query, not to be
+ * loaded one by one.
+ */
+public class PartitionedQueryExecutor {
+
+    public static final String PARTITION_FROM = "partitionFrom";
+    public static final String PARTITION_TO = "partitionTo";
+
+    private final SessionFactory sessionFactory;
+    private final ForkJoinPool pool;
+    private final int partitions;
+
+    public PartitionedQueryExecutor(SessionFactory sessionFactory, ForkJoinPool pool, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be positive: " + partitions);
+        }
+        this.sessionFactory = sessionFactory;
+        this.pool = pool;
+        this.partitions = partitions;
+    }
+
+    /**
+     * @param hql the query, restricting its root id with {@code :partitionFrom} and {@code :partitionTo}
+     * @param fromId the first id, inclusive
+     * @param toId the last id, exclusive
+     * @param ordered whether the stream follows the partition order, otherwise partitions come as they complete
+     */
+    public <T> Stream<T> stream(
+            String hql,
+            Class<T> resultType,
+            long fromId,
+            long toId,
+            boolean ordered,
+            Consumer<T> initializer) {
+        final long span = Math.max(1L, (toId - fromId + partitions - 1) / partitions);
+        final int count = (int) Math.max(0L, Math.min(partitions, (toId - fromId + span - 1) / span));
+
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<List<T>>[] futures = new CompletableFuture[count];
+        final BlockingQueue<CompletableFuture<List<T>>> completed = new LinkedBlockingQueue<>();
+        for (int i = 0; i < count; i++) {
+            final long partitionFrom = fromId + i * span;
+            final long partitionTo = Math.min(toId, partitionFrom + span);
+            final CompletableFuture<List<T>> future = CompletableFuture.supplyAsync(
+                    () -> readPartition(hql, resultType, partitionFrom, partitionTo, initializer), pool);
+            future.whenComplete((result, failure) -> completed.add(future));
+            futures[i] = future;
+        }
+
+        final Stream<CompletableFuture<List<T>>> partitionResults = ordered
+                ? Stream.of(futures)
+                : IntStream.range(0, count).mapToObj(i -> take(completed));
+        return partitionResults.flatMap(future -> join(future).stream());
+    }
+
+    private <T> List<T> readPartition(
+            String hql,
+            Class<T> resultType,
+            long partitionFrom,
+            long partitionTo,
+            Consumer<T> initializer) {
+        Session s = sessionFactory.openSession();
+        s.setDefaultReadOnly(true);
+        s.setHibernateFlushMode(FlushMode.MANUAL);
+        Transaction tx = s.beginTransaction();
+        try {
+            final List<T> results = s.createQuery(hql, resultType)
+                    .setParameter(PARTITION_FROM, partitionFrom)
+                    .setParameter(PARTITION_TO, partitionTo)
+                    .list();
+            if (initializer != null) {
+                results.forEach(initializer);
+            }
+            tx.commit();
+            return results;
+        } catch (RuntimeException e) {
+            tx.rollback();
+            throw e;
+        } finally {
+            s.close();
+        }
+    }
+
+    private static <T> CompletableFuture<List<T>> take(BlockingQueue<CompletableFuture<List<T>>> completed) {
+        try {
+            return completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HibernateException("Interrupted while waiting for a partition", e);
+        }
+    }
+
+    private static <T> List<T> join(CompletableFuture<List<T>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new HibernateException("Unable to read a partition", e.getCause());
+        }
+    }
+}
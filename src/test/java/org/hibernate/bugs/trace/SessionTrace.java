@@ -0,0 +1,115 @@
+package org.hibernate.bugs.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.BitSet;
+
+/**
+ * Ring buffer of the last statement executions of one session, kept in primitive arrays: recording an event
+ * allocates nothing. Not thread safe, like the session it belongs to.
+ */
+public class SessionTrace {
+
+    private final long[] startMicros;
+    private final long[] durationNanos;
+    private final int[] shapes;
+    private final int[] bindCounts;
+    private final boolean[] batches;
+    private long recorded = 0L;
+
+    public SessionTrace(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        startMicros = new long[capacity];
+        durationNanos = new long[capacity];
+        shapes = new int[capacity];
+        bindCounts = new int[capacity];
+        batches = new boolean[capacity];
+    }
+
+    void record(long startEpochMicros, long nanos, int shape, int bindCount, boolean batch) {
+        final int slot = (int) (recorded % startMicros.length);
+        startMicros[slot] = startEpochMicros;
+        durationNanos[slot] = nanos;
+        shapes[slot] = shape;
+        bindCounts[slot] = bindCount;
+        batches[slot] = batch;
+        recorded++;
+    }
+
+    /**
+     * @return the number of events recorded since the session started, including those overwritten since
+     */
+    public long getRecordedCount() {
+        return recorded;
+    }
+
+    /**
+     * @return the number of events still in the buffer
+     */
+    public int size() {
+        return (int) Math.min(recorded, startMicros.length);
+    }
+
+    /**
+     * Writes the buffered events as JSON lines, oldest first, preceded by the definition of the shapes they use.
+     */
+    public void writeJsonLines(String sessionId, Writer out) throws IOException {
+        final int size = size();
+        final long first = recorded - size;
+
+        final BitSet written = new BitSet();
+        for (long i = first; i < recorded; i++) {
+            final int shape = shapes[(int) (i % startMicros.length)];
+            if (shape >= 0 && !written.get(shape)) {
+                written.set(shape);
+                out.write("{\"shape\":" + shape + ",\"sql\":\"" + escape(StatementShapes.sqlOf(shape)) + "\"}\n");
+            }
+        }
+        for (long i = first; i < recorded; i++) {
+            final int slot = (int) (i % startMicros.length);
+            out.write("{\"session\":\"" + escape(sessionId)
+                    + "\",\"start\":" + startMicros[slot]
+                    + ",\"durationUs\":" + durationNanos[slot] / 1_000
+                    + ",\"shape\":" + shapes[slot]
+                    + ",\"binds\":" + bindCounts[slot]
+                    + ",\"batch\":" + batches[slot] + "}\n");
+        }
+        out.flush();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    escaped.append("\\\"");
+                    break;
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+}
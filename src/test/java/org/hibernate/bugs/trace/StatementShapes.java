@@ -0,0 +1,80 @@
+package org.hibernate.bugs.trace;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Numbers the distinct SQL strings, so that trace events carry a small shape id instead of the statement text, and
+ * keeps the number of bind markers of each. Hibernate generates the same SQL for the same load (e.g. the
+ * {@code Practitioner.user} lazy-group select), but IN lists of variable size and queries with literals do not
+ * repeat: past {@code hhh13134.trace.max_shapes} distinct statements (1024 by default), new ones are traced as
+ * {@link #UNKNOWN}.
+ */
+public final class StatementShapes {
+
+    public static final int UNKNOWN = -1;
+
+    private static final int MAX_SHAPES = Integer.getInteger("hhh13134.trace.max_shapes", 1024);
+
+    private static final ConcurrentMap<String, Shape> SHAPES = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<String> SQL = new AtomicReferenceArray<>(MAX_SHAPES);
+
+    private StatementShapes() {
+    }
+
+    public static int idOf(String sql) {
+        return shapeOf(sql).id;
+    }
+
+    public static String sqlOf(int id) {
+        return id < 0 || id >= SQL.length() ? null : SQL.get(id);
+    }
+
+    static Shape shapeOf(String sql) {
+        final Shape shape = SHAPES.get(sql);
+        if (shape != null) {
+            return shape;
+        }
+        synchronized (SHAPES) {
+            final Shape existing = SHAPES.get(sql);
+            if (existing != null) {
+                return existing;
+            }
+            final int id = SHAPES.size();
+            if (id >= MAX_SHAPES) {
+                return new Shape(UNKNOWN, bindCount(sql));
+            }
+            // published before the shape, so that a traced id always resolves
+            SQL.set(id, sql);
+            final Shape added = new Shape(id, bindCount(sql));
+            SHAPES.put(sql, added);
+            return added;
+        }
+    }
+
+    private static int bindCount(String sql) {
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            final char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static final class Shape {
+
+        final int id;
+        final int bindCount;
+
+        private Shape(int id, int bindCount) {
+            this.id = id;
+            this.bindCount = bindCount;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.hibernate.bugs.trace;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Registers the shape of each statement about to be prepared and hands it over to the
+ * {@link TracingSessionEventListener} of the same thread. Leaves the SQL untouched.
+ * <p>
+ * Configure with {@code hibernate.session_factory.statement_inspector}.
+ */
+public class TraceStatementInspector implements StatementInspector {
+
+    private static final ThreadLocal<int[]> CURRENT = ThreadLocal.withInitial(() -> new int[]{StatementShapes.UNKNOWN, 0});
+
+    @Override
+    public String inspect(String sql) {
+        final StatementShapes.Shape shape = StatementShapes.shapeOf(sql);
+        final int[] current = CURRENT.get();
+        current[0] = shape.id;
+        current[1] = shape.bindCount;
+        return sql;
+    }
+
+    static int currentShape() {
+        return CURRENT.get()[0];
+    }
+
+    static int currentBindCount() {
+        return CURRENT.get()[1];
+    }
+
+    /**
+     * Forgets the shape once recorded, so that a statement executed without going through the inspector, from
+     * {@code Session#doWork} for instance, is recorded as unknown rather than as the previous statement.
+     */
+    static void reset() {
+        final int[] current = CURRENT.get();
+        current[0] = StatementShapes.UNKNOWN;
+        current[1] = 0;
+    }
+}
@@ -0,0 +1,124 @@
+package org.hibernate.bugs.trace;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Low-overhead replacement for {@code SHOW_SQL} and {@code hibernate.session.events.log}: records each statement
+ * execution of the session in a {@link SessionTrace}, and appends the trace to a JSON-lines file when the session
+ * ends after more than a threshold, or on demand.
+ * <p>
+ * Either configure it for every session with {@code hibernate.session.events.auto}, the threshold and directory
+ * being read from the {@code hhh13134.trace.threshold_ms} and {@code hhh13134.trace.dir} system properties, or
+ * {@link #attach(Session, long, Path) attach} it to one session. Statement shapes require
+ * {@link TraceStatementInspector}.
+ */
+public class TracingSessionEventListener extends BaseSessionEventListener {
+
+    private static final Logger log = Logger.getLogger(TracingSessionEventListener.class);
+
+    private static final int CAPACITY = 256;
+
+    // sessions ending together must not interleave their lines
+    private static final ReentrantLock DUMP_LOCK = new ReentrantLock();
+
+    private final String sessionId = UUID.randomUUID().toString();
+    private final SessionTrace trace = new SessionTrace(CAPACITY);
+    private final long thresholdNanos;
+    private final Path directory;
+    private final long sessionStart = System.nanoTime();
+
+    private long executionStart;
+    private long executionStartMicros;
+
+    public TracingSessionEventListener() {
+        this(Long.getLong("hhh13134.trace.threshold_ms", 1_000L),
+                Paths.get(System.getProperty("hhh13134.trace.dir", System.getProperty("java.io.tmpdir"))));
+    }
+
+    public TracingSessionEventListener(long thresholdMillis, Path directory) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.directory = directory;
+    }
+
+    public static TracingSessionEventListener attach(Session session, long thresholdMillis, Path directory) {
+        final TracingSessionEventListener listener = new TracingSessionEventListener(thresholdMillis, directory);
+        session.addEventListeners(listener);
+        return listener;
+    }
+
+    public SessionTrace getTrace() {
+        return trace;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        executionStart = System.nanoTime();
+        executionStartMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        record(false);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        jdbcExecuteStatementStart();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        record(true);
+    }
+
+    private void record(boolean batch) {
+        trace.record(executionStartMicros, System.nanoTime() - executionStart,
+                TraceStatementInspector.currentShape(), TraceStatementInspector.currentBindCount(), batch);
+        TraceStatementInspector.reset();
+    }
+
+    @Override
+    public void end() {
+        if (System.nanoTime() - sessionStart > thresholdNanos) {
+            try {
+                dump();
+            } catch (IOException e) {
+                log.warn("Unable to write the trace of session " + sessionId, e);
+            }
+        }
+    }
+
+    /**
+     * Appends the buffered events to {@code hhh13134-trace.jsonl} in the configured directory.
+     *
+     * @return the file written
+     */
+    public Path dump() throws IOException {
+        final Path file = directory.resolve("hhh13134-trace.jsonl");
+        DUMP_LOCK.lock();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            trace.writeJsonLines(sessionId, out);
+        } finally {
+            DUMP_LOCK.unlock();
+        }
+        return file;
+    }
+}